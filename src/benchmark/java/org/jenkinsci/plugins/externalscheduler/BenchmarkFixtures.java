@@ -0,0 +1,116 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.labels.LabelAtom;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mockito.Mockito;
+import org.objenesis.ObjenesisStd;
+import org.powermock.reflect.Whitebox;
+
+/**
+ * Stand-ins for Jenkins model usable outside of PowerMock runner.
+ *
+ * {@link ItemMock} and {@link NodeMockFactory} need PowerMock class loader to
+ * mock final classes and methods. Benchmarks create real buildable items
+ * bypassing their constructor instead, and plain Mockito nodes. Methods final
+ * in Jenkins can not be used on those.
+ *
+ * @author ogondza
+ */
+public final class BenchmarkFixtures {
+
+    private static final ObjenesisStd OBJENESIS = new ObjenesisStd();
+
+    private BenchmarkFixtures() {}
+
+    public static Queue.BuildableItem item(final int id, final String displayName) {
+
+        final Queue.Task task = Mockito.mock(Queue.Task.class);
+        Mockito.when(task.getDisplayName()).thenReturn(displayName);
+
+        final Queue.BuildableItem item = (Queue.BuildableItem) OBJENESIS.newInstance(Queue.BuildableItem.class);
+        Whitebox.setInternalState(item, "id", id);
+        Whitebox.setInternalState(item, "task", task);
+
+        return item;
+    }
+
+    public static List<Queue.BuildableItem> items(final int count) {
+
+        final List<Queue.BuildableItem> items = new ArrayList<Queue.BuildableItem>(count);
+        for (int id = 0; id < count; id++) {
+
+            items.add(item(id, "job" + id));
+        }
+
+        return items;
+    }
+
+    public static Node node(final String name, final int executors) {
+
+        final Node node = Mockito.mock(Node.class);
+        Mockito.when(node.getSelfLabel()).thenReturn(new LabelAtom(name));
+        Mockito.when(node.getDisplayName()).thenReturn(name);
+        Mockito.when(node.getNumExecutors()).thenReturn(executors);
+        Mockito.when(node.getMode()).thenReturn(Node.Mode.NORMAL);
+
+        return node;
+    }
+
+    public static List<Node> nodes(final int count) {
+
+        final List<Node> nodes = new ArrayList<Node>(count);
+        for (int i = 0; i < count; i++) {
+
+            nodes.add(node("slave" + i, 2));
+        }
+
+        return nodes;
+    }
+
+    /**
+     * Assign items to nodes round robin
+     */
+    public static NodeAssignments roundRobin(final List<Queue.BuildableItem> items, final List<Node> nodes) {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        for (int i = 0; i < items.size(); i++) {
+
+            builder.assign(items.get(i), nodes.get(i % nodes.size()));
+        }
+
+        return builder.build();
+    }
+
+    public static ExternalScheduler plugin() {
+
+        return (ExternalScheduler) OBJENESIS.newInstance(ExternalScheduler.class);
+    }
+}
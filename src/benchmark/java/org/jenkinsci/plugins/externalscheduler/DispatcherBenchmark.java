@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.queue.CauseOfBlockage;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measure {@link Dispatcher} deciding about items.
+ *
+ * <tt>canTake</tt> rejects an item on every node, <tt>queuePass</tt> decides
+ * about all (node, item) pairs as Jenkins does during queue maintenance. The
+ * baseline allocates new cause for every rejection as the dispatcher used to.
+ *
+ * @author ogondza
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DispatcherBenchmark {
+
+    @Param({"10", "400", "2000"})
+    public int nodes;
+
+    @Param({"100", "2000"})
+    public int items;
+
+    private List<Node> nodeList;
+    private List<Queue.BuildableItem> queue;
+    private Queue.BuildableItem unassigned;
+    private NodeAssignments solution;
+    private Dispatcher dispatcher;
+
+    @Setup
+    public void setUp() {
+
+        nodeList = BenchmarkFixtures.nodes(nodes);
+        queue = BenchmarkFixtures.items(items);
+        unassigned = BenchmarkFixtures.item(-1, "unassigned");
+        solution = BenchmarkFixtures.roundRobin(queue, nodeList);
+        dispatcher = new Dispatcher(BenchmarkFixtures.plugin());
+    }
+
+    @Benchmark
+    public void canTake(final Blackhole hole) {
+
+        for (final Node node: nodeList) {
+
+            hole.consume(dispatcher.canTake(solution, node, unassigned));
+        }
+    }
+
+    @Benchmark
+    public void newCauseBaseline(final Blackhole hole) {
+
+        for (final Node node: nodeList) {
+
+            hole.consume(solution.isAssigned(unassigned.id, node) ? null : legacyCause(node));
+        }
+    }
+
+    @Benchmark
+    public void queuePass(final Blackhole hole) {
+
+        for (final Queue.BuildableItem item: queue) {
+
+            for (final Node node: nodeList) {
+
+                hole.consume(dispatcher.canTake(solution, node, item));
+            }
+        }
+    }
+
+    private CauseOfBlockage legacyCause(final Node node) {
+
+        return new CauseOfBlockage() {
+
+            @Override
+            public String getShortDescription() {
+
+                return String.format(
+                        "External scheduler decided not to assign %s to %s", unassigned.toString(), node.toString()
+                );
+            }
+        };
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compare {@link NodeAssignments} with boxed map it used to be backed by
+ *
+ * @author ogondza
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NodeAssignmentsBenchmark {
+
+    private static final int PATCH_SIZE = 10;
+
+    @Param({"100", "2000", "50000"})
+    public int items;
+
+    @Param({"10", "400", "2000"})
+    public int nodes;
+
+    private String[] nodeNames;
+
+    private NodeAssignments assignments;
+    private Map<Integer, String> boxed;
+
+    @Setup
+    public void setUp() {
+
+        nodeNames = new String[nodes];
+        for (int i = 0; i < nodes; i++) {
+
+            nodeNames[i] = "slave" + i;
+        }
+
+        assignments = buildAssignments();
+        boxed = buildBoxed();
+    }
+
+    @Benchmark
+    public NodeAssignments build() {
+
+        return buildAssignments();
+    }
+
+    @Benchmark
+    public Map<Integer, String> buildBoxedBaseline() {
+
+        return buildBoxed();
+    }
+
+    @Benchmark
+    public void lookup(final Blackhole hole) {
+
+        for (int id = 0; id < items; id++) {
+
+            hole.consume(assignments.nodeName(id));
+        }
+    }
+
+    @Benchmark
+    public void lookupBoxedBaseline(final Blackhole hole) {
+
+        for (int id = 0; id < items; id++) {
+
+            hole.consume(boxed.get(id));
+        }
+    }
+
+    /**
+     * Move few items to other nodes deriving new assignments
+     */
+    @Benchmark
+    public NodeAssignments patch() {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder(assignments);
+        for (int id = 0; id < PATCH_SIZE; id++) {
+
+            builder.assign(id, nodeNames[(id + 1) % nodes]);
+        }
+
+        return builder.unassign(items - 1).build();
+    }
+
+    /**
+     * Apply the same change building assignments from scratch
+     */
+    @Benchmark
+    public NodeAssignments patchRebuildBaseline() {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        for (int id = 0; id < items - 1; id++) {
+
+            builder.assign(id, nodeNames[(id < PATCH_SIZE ? id + 1 : id) % nodes]);
+        }
+
+        return builder.build();
+    }
+
+    private NodeAssignments buildAssignments() {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        for (int id = 0; id < items; id++) {
+
+            // Names parsed from planner response are distinct instances
+            builder.assign(id, new String(nodeNames[id % nodes]));
+        }
+
+        return builder.build();
+    }
+
+    private Map<Integer, String> buildBoxed() {
+
+        final Map<Integer, String> map = new HashMap<Integer, String>();
+        for (int id = 0; id < items; id++) {
+
+            map.put(id, new String(nodeNames[id % nodes]));
+        }
+
+        return Collections.unmodifiableMap(map);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.AbstractCIBase;
+import hudson.model.Queue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure snapshots taken by {@link AbstractCiStateProvider}.
+ *
+ * Only queue snapshot is measured. Node readiness is determined by
+ * <tt>Node.toComputer()</tt> which is final and can not be stubbed outside of
+ * PowerMock class loader.
+ *
+ * @author ogondza
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StateProviderBenchmark {
+
+    @Param({"100", "2000", "50000"})
+    public int items;
+
+    private AbstractCiStateProvider provider;
+
+    @Setup
+    public void setUp() {
+
+        final List<Queue.BuildableItem> buildables = BenchmarkFixtures.items(items);
+
+        final Queue queue = Mockito.mock(Queue.class);
+        Mockito.when(queue.getBuildableItems()).thenReturn(buildables);
+
+        final AbstractCIBase jenkins = Mockito.mock(AbstractCIBase.class);
+        Mockito.when(jenkins.getQueue()).thenReturn(queue);
+
+        provider = new AbstractCiStateProvider(jenkins);
+    }
+
+    @Benchmark
+    public List<Queue.BuildableItem> queue() {
+
+        return provider.getQueue();
+    }
+}
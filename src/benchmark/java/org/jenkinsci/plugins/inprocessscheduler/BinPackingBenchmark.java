@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.labels.LabelAtom;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.externalscheduler.BenchmarkFixtures;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure time {@link BinPackingScheduler} needs to plan whole queue.
+ *
+ * Nodes are split into <tt>labels</tt> pools of equal size and items are
+ * restricted to pools round robin. Every node has two free executors.
+ *
+ * @author ogondza
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BinPackingBenchmark {
+
+    @Param({"100", "1000"})
+    public int nodes;
+
+    @Param({"1000", "10000"})
+    public int items;
+
+    @Param({"1", "20"})
+    public int labels;
+
+    private List<Node> nodeList;
+    private List<Queue.BuildableItem> queue;
+    private BinPackingScheduler scheduler;
+
+    @Setup
+    public void setUp() {
+
+        nodeList = BenchmarkFixtures.nodes(nodes);
+        queue = BenchmarkFixtures.items(items);
+
+        final List<LabelAtom> pools = new ArrayList<LabelAtom>(labels);
+        for (int pool = 0; pool < labels; pool++) {
+
+            final Set<Node> members = new HashSet<Node>();
+            for (int i = pool; i < nodes; i += labels) {
+
+                members.add(nodeList.get(i));
+            }
+
+            pools.add(new LabelAtom("pool" + pool) {
+
+                @Override
+                public Set<Node> getNodes() {
+
+                    return members;
+                }
+            });
+        }
+
+        for (int i = 0; i < items; i++) {
+
+            final Queue.Task task = queue.get(i).task;
+            Mockito.when(task.getAssignedLabel()).thenReturn(pools.get(i % labels));
+            Mockito.when(task.getEstimatedDuration()).thenReturn(1000L * (1 + i % 17));
+        }
+
+        scheduler = new BinPackingScheduler() {
+
+            @Override
+            protected int freeExecutors(final Node node) {
+
+                return node.getNumExecutors();
+            }
+        };
+    }
+
+    @Benchmark
+    public NodeAssignments plan() {
+
+        return scheduler.solution(queue, nodeList);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.externalscheduler.BenchmarkFixtures;
+import org.jenkinsci.plugins.externalscheduler.DurationEstimator;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.powermock.reflect.Whitebox;
+
+/**
+ * Measure {@link FairShareScheduler} planning skewed workload.
+ *
+ * Team <tt>burst</tt> queues <tt>skew</tt> percent of items before all the
+ * other teams. <tt>fairShare</tt> and <tt>queueOrder</tt> report how many
+ * executors went to the other teams per plan as <tt>othersAssigned</tt>
+ * secondary result. Fair share gives them their part of executors, queue order
+ * starves them.
+ *
+ * @author ogondza
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FairShareBenchmark {
+
+    @Param({"1000", "10000"})
+    public int items;
+
+    @Param({"20"})
+    public int teams;
+
+    @Param({"90"})
+    public int skew;
+
+    private List<Node> nodeList;
+    private List<Queue.BuildableItem> queue;
+    private List<Queue.BuildableItem> others;
+    private FairShareScheduler fairShare;
+    private BinPackingScheduler queueOrder;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Share {
+
+        public long othersAssigned;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+
+            othersAssigned = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+
+        nodeList = BenchmarkFixtures.nodes(500);
+        queue = new ArrayList<Queue.BuildableItem>(items);
+        others = new ArrayList<Queue.BuildableItem>();
+
+        final int burst = items * skew / 100;
+        for (int id = 0; id < items; id++) {
+
+            final String team = id < burst ? "burst" : "team" + (id % (teams - 1));
+            final Queue.BuildableItem item = item(id, team);
+            queue.add(item);
+            if (id >= burst) {
+
+                others.add(item);
+            }
+        }
+
+        final UsageLedger ledger = new UsageLedger(UsageLedger.HALF_LIFE);
+        fairShare = new FairShareScheduler("", new EstimatedDurationWeights(new DurationEstimator()), ledger) {
+
+            @Override
+            protected int freeExecutors(final Node node) {
+
+                return node.getNumExecutors();
+            }
+        };
+
+        queueOrder = new BinPackingScheduler() {
+
+            @Override
+            protected int freeExecutors(final Node node) {
+
+                return node.getNumExecutors();
+            }
+        };
+    }
+
+    @Benchmark
+    public NodeAssignments fairShare(final Share share) {
+
+        return count(fairShare.solution(queue, nodeList), share);
+    }
+
+    @Benchmark
+    public NodeAssignments queueOrder(final Share share) {
+
+        return count(queueOrder.solution(queue, nodeList), share);
+    }
+
+    private NodeAssignments count(final NodeAssignments solution, final Share share) {
+
+        for (final Queue.BuildableItem item: others) {
+
+            if (solution.assignedNode(item.id) != NodeAssignments.NOT_ASSIGNED) {
+
+                share.othersAssigned++;
+            }
+        }
+
+        return solution;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private Queue.BuildableItem item(final int id, final String team) {
+
+        final Queue.BuildableItem item = BenchmarkFixtures.item(id, "job" + id);
+
+        final ItemGroup folder = Mockito.mock(ItemGroup.class);
+        Mockito.when(folder.getFullName()).thenReturn(team);
+
+        final Queue.Task task = Mockito.mock(Queue.Task.class, Mockito.withSettings().extraInterfaces(Item.class));
+        Mockito.when(task.getDisplayName()).thenReturn("job" + id);
+        Mockito.when(task.getEstimatedDuration()).thenReturn(1000L * (1 + id % 17));
+        Mockito.when(((Item) task).getParent()).thenReturn(folder);
+        Whitebox.setInternalState(item, "task", task);
+
+        return item;
+    }
+}
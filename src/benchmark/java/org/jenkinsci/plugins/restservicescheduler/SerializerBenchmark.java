@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.externalscheduler.BenchmarkFixtures;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.StateProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare {@link BinarySerializer} with {@link JsonSerializer}
+ *
+ * Every item can run on every node so the state carries items times nodes
+ * candidates. Free executors are not taken from computers as
+ * <tt>Node.toComputer()</tt> is final.
+ *
+ * @author ogondza
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SerializerBenchmark {
+
+    @Param({"100", "2000", "10000"})
+    public int items;
+
+    @Param({"10", "100"})
+    public int nodes;
+
+    private StateProvider state;
+    private NodeAssignments previous;
+
+    private JsonSerializer json;
+    private BinarySerializer binary;
+
+    private String jsonSolution;
+    private ByteBuffer binarySolution;
+
+    @Setup
+    public void setUp() {
+
+        final List<Queue.BuildableItem> queue = BenchmarkFixtures.items(items);
+        final List<Node> ready = BenchmarkFixtures.nodes(nodes);
+        state = new StateProvider() {
+
+            public List<Queue.BuildableItem> getQueue() {
+
+                return queue;
+            }
+
+            public List<Node> getNodes() {
+
+                return ready;
+            }
+        };
+        previous = BenchmarkFixtures.roundRobin(queue, ready);
+
+        json = new JsonSerializer() {
+
+            @Override
+            protected int freeExecutors(final Node node) {
+
+                return 1;
+            }
+        };
+        binary = new BinarySerializer() {
+
+            @Override
+            protected int freeExecutors(final Node node) {
+
+                return 1;
+            }
+        };
+
+        final JSONArray assignments = new JSONArray();
+        final Map<Integer, String> binaryAssignments = new HashMap<Integer, String>();
+        for (final Queue.BuildableItem item: queue) {
+
+            final String node = previous.nodeName(item);
+            assignments.add(new JSONObject()
+                    .element("id", item.id)
+                    .element("name", item.task.getDisplayName())
+                    .element("node", node)
+            );
+            binaryAssignments.put(item.id, node);
+        }
+
+        jsonSolution = new JSONObject().element("solution", assignments).toString();
+        binarySolution = BinarySolution.encode(binaryAssignments);
+    }
+
+    @Benchmark
+    public String serializeJson() {
+
+        return json.serialize(state, previous);
+    }
+
+    @Benchmark
+    public ByteBuffer serializeBinary() {
+
+        return binary.serialize(state, previous);
+    }
+
+    @Benchmark
+    public NodeAssignments deserializeJson() {
+
+        return json.deserialize(jsonSolution);
+    }
+
+    @Benchmark
+    public NodeAssignments deserializeBinary() throws IOException {
+
+        return binary.deserialize(binarySolution.duplicate());
+    }
+}
@@ -31,16 +31,34 @@ import hudson.model.Queue;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Encapsulate Jenkins state
  *
+ * Ready nodes are determined once and reused until a node changes its state
+ * or configuration, see {@link #nodesChanged()}. Snapshot also expires after
+ * {@link #MAX_AGE} as Jenkins does not report nodes that stop accepting tasks
+ * on their own.
+ *
  * @author ogondza
  */
 public class AbstractCiStateProvider implements StateProvider {
 
+    /**
+     * Maximal age of node snapshot in milliseconds
+     */
+    /*package*/ static final long MAX_AGE = Long.getLong(
+            AbstractCiStateProvider.class.getName() + ".maxAge", 60000
+    );
+
+    private final AtomicLong nodeVersion = new AtomicLong();
+
     private final AbstractCIBase jenkins;
 
+    private volatile NodeSnapshot nodes;
+
     /*package*/ AbstractCiStateProvider(final AbstractCIBase base) {
 
         if (base == null) throw new IllegalArgumentException("Base is null");
@@ -48,13 +66,42 @@ public class AbstractCiStateProvider implements StateProvider {
         this.jenkins = base;
     }
 
+    /**
+     * Provider reads state of given Jenkins instance
+     */
+    /*package*/ boolean isFor(final AbstractCIBase base) {
+
+        return jenkins == base;
+    }
+
+    /**
+     * Nodes has changed their state or configuration
+     */
+    /*package*/ void nodesChanged() {
+
+        nodeVersion.incrementAndGet();
+    }
+
     /**
      * Get nodes ready to execute builds
      *
-     * @return List of online Nodes. Never null
+     * @return Immutable list of online Nodes. Never null
      */
     public List<Node> getNodes() {
 
+        final long version = nodeVersion.get();
+        NodeSnapshot snapshot = nodes;
+        if (snapshot == null || !snapshot.validFor(version)) {
+
+            snapshot = new NodeSnapshot(version, readyNodes());
+            nodes = snapshot;
+        }
+
+        return snapshot.nodes;
+    }
+
+    private List<Node> readyNodes() {
+
         final List<Node> nodeCandidates = new ArrayList<Node>(jenkins.getNodes());
         nodeCandidates.add(jenkins);
 
@@ -67,7 +114,7 @@ public class AbstractCiStateProvider implements StateProvider {
             }
         }
 
-        return nodes;
+        return Collections.unmodifiableList(nodes);
     }
 
     private boolean nodeReady(final Node node) {
@@ -89,4 +136,25 @@ public class AbstractCiStateProvider implements StateProvider {
                 jenkins.getQueue().getBuildableItems()
         );
     }
+
+    private static final class NodeSnapshot {
+
+        private final long version;
+        private final long created;
+        private final List<Node> nodes;
+
+        private NodeSnapshot(final long version, final List<Node> nodes) {
+
+            this.version = version;
+            this.created = System.nanoTime();
+            this.nodes = nodes;
+        }
+
+        private boolean validFor(final long version) {
+
+            if (this.version != version) return false;
+
+            return System.nanoTime() - created < TimeUnit.MILLISECONDS.toNanos(MAX_AGE);
+        }
+    }
 }
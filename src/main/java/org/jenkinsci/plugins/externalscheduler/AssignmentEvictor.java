@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drop items that left the queue from solutions kept between scheduling cycles.
+ *
+ * Items are evicted as soon as Jenkins reports they started, see
+ * {@link Scheduler#itemsLeft(int...)}. Items leaving the queue unreported
+ * (cancelled ones, for instance) are found reconciling the solution with ids
+ * of items in the queue so the solution does not outgrow the live queue.
+ * Schedulers that know which items might have left can check just those and
+ * evict them with {@link #evictUnreported(AtomicReference, int...)}.
+ *
+ * Solutions are replaced atomically so concurrent updates are not lost.
+ *
+ * @author ogondza
+ */
+public final class AssignmentEvictor {
+
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong reconciled = new AtomicLong();
+
+    /**
+     * Remove items known to have left the queue
+     *
+     * @return Solution in effect afterwards
+     */
+    public NodeAssignments evict(final AtomicReference<NodeAssignments> solution, final int... ids) {
+
+        return prune(solution, ids, evicted);
+    }
+
+    /**
+     * Remove items found to have left the queue without being reported
+     *
+     * @return Solution in effect afterwards
+     */
+    public NodeAssignments evictUnreported(final AtomicReference<NodeAssignments> solution, final int... ids) {
+
+        return prune(solution, ids, reconciled);
+    }
+
+    private NodeAssignments prune(
+            final AtomicReference<NodeAssignments> solution, final int[] ids, final AtomicLong counter
+    ) {
+
+        while (true) {
+
+            final NodeAssignments base = solution.get();
+            if (base == null) return null;
+
+            final NodeAssignments.Builder builder = NodeAssignments.builder(base);
+            int count = 0;
+            for (final int id: ids) {
+
+                if (base.isPlanned(id)) {
+
+                    builder.forget(id);
+                    count++;
+                }
+            }
+
+            if (count == 0) return base;
+
+            final NodeAssignments pruned = builder.build();
+            if (solution.compareAndSet(base, pruned)) {
+
+                counter.addAndGet(count);
+                return pruned;
+            }
+        }
+    }
+
+    /**
+     * Remove items that are not in the queue
+     *
+     * @param live Ids of all items in the queue, in any order
+     * @return Solution in effect afterwards
+     */
+    public NodeAssignments reconcile(final AtomicReference<NodeAssignments> solution, final int[] live) {
+
+        final int[] sortedLive = live.clone();
+        Arrays.sort(sortedLive);
+
+        while (true) {
+
+            final NodeAssignments base = solution.get();
+            if (base == null) return null;
+
+            final NodeAssignments.Builder builder = NodeAssignments.builder(base);
+            int pruned = 0;
+            for (final int id: base.plannedItems()) {
+
+                if (Arrays.binarySearch(sortedLive, id) < 0) {
+
+                    builder.forget(id);
+                    pruned++;
+                }
+            }
+
+            if (pruned == 0) return base;
+
+            final NodeAssignments reconciled = builder.build();
+            if (solution.compareAndSet(base, reconciled)) {
+
+                this.reconciled.addAndGet(pruned);
+                return reconciled;
+            }
+        }
+    }
+
+    /**
+     * Number of items evicted once reported to leave the queue
+     */
+    public long evicted() {
+
+        return evicted.get();
+    }
+
+    /**
+     * Number of items evicted since they were not found in the queue
+     */
+    public long reconciled() {
+
+        return reconciled.get();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Node;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Canonical {@link NotAssignedCause} instances for current solution.
+ *
+ * Causes are dropped once the solution changes so nodes removed since then are
+ * not retained.
+ *
+ * @author ogondza
+ */
+/*package*/ final class BlockageCauses {
+
+    private static final int REASONS = NotAssignedCause.Reason.values().length;
+
+    private final AtomicReference<Generation> generation = new AtomicReference<Generation>();
+
+    /*package*/ NotAssignedCause get(
+            final NodeAssignments solution, final Node node, final NotAssignedCause.Reason reason
+    ) {
+
+        final NotAssignedCause[] causes = generation(solution).forNode(node);
+
+        // Racing threads might create equivalent instances, either one will do
+        NotAssignedCause cause = causes[reason.ordinal()];
+        if (cause == null) {
+
+            cause = new NotAssignedCause(reason, node);
+            causes[reason.ordinal()] = cause;
+        }
+
+        return cause;
+    }
+
+    private Generation generation(final NodeAssignments solution) {
+
+        final Generation current = generation.get();
+        if (current != null && current.solution == solution) return current;
+
+        final Generation created = new Generation(solution);
+        return generation.compareAndSet(current, created)
+                ? created
+                : generation(solution)
+        ;
+    }
+
+    private static final class Generation {
+
+        private final NodeAssignments solution;
+
+        private final ConcurrentHashMap<Node, NotAssignedCause[]> causes = new ConcurrentHashMap<Node, NotAssignedCause[]>();
+
+        private Generation(final NodeAssignments solution) {
+
+            this.solution = solution;
+        }
+
+        private NotAssignedCause[] forNode(final Node node) {
+
+            NotAssignedCause[] forNode = causes.get(node);
+            if (forNode == null) {
+
+                final NotAssignedCause[] created = new NotAssignedCause[REASONS];
+                forNode = causes.putIfAbsent(node, created);
+                if (forNode == null) forNode = created;
+            }
+
+            return forNode;
+        }
+    }
+}
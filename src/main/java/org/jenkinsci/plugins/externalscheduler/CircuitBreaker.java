@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stop asking scheduler that keeps failing.
+ *
+ * Breaker opens after {@link #THRESHOLD} consecutive failures or calls that
+ * exceeded their latency budget. No calls are let through while open. Once
+ * {@link #OPEN_INTERVAL} elapses single probing call is let through, breaker
+ * closes when it succeeds and opens again when it fails.
+ *
+ * @author ogondza
+ */
+public final class CircuitBreaker {
+
+    /*package*/ static final int THRESHOLD = Integer.getInteger(
+            CircuitBreaker.class.getName() + ".threshold", 3
+    );
+
+    /**
+     * Milliseconds breaker stays open before probing
+     */
+    /*package*/ static final long OPEN_INTERVAL = Long.getLong(
+            CircuitBreaker.class.getName() + ".openInterval", 30000
+    );
+
+    public enum State {
+
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int threshold;
+    private final long openInterval;
+
+    /**
+     * Guarded by this
+     */
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt;
+    private long opened = 0;
+    private long rejected = 0;
+
+    public CircuitBreaker() {
+
+        this(THRESHOLD, OPEN_INTERVAL);
+    }
+
+    /**
+     * @param openInterval Milliseconds to stay open before probing
+     */
+    /*package*/ CircuitBreaker(final int threshold, final long openInterval) {
+
+        if (threshold <= 0) throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+
+        this.threshold = threshold;
+        this.openInterval = TimeUnit.MILLISECONDS.toNanos(openInterval);
+    }
+
+    /**
+     * Determine whether call can be made
+     */
+    /*package*/ boolean allow() {
+
+        return allow(System.nanoTime());
+    }
+
+    /*package*/ synchronized boolean allow(final long now) {
+
+        if (state == State.CLOSED) return true;
+
+        if (state == State.OPEN && now - openedAt >= openInterval) {
+
+            state = State.HALF_OPEN;
+            return true;
+        }
+
+        // Open or probe in progress
+        rejected++;
+        return false;
+    }
+
+    /*package*/ synchronized void success() {
+
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    /*package*/ void failure() {
+
+        failure(System.nanoTime());
+    }
+
+    /*package*/ synchronized void failure(final long now) {
+
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= threshold)) {
+
+            state = State.OPEN;
+            openedAt = now;
+            opened++;
+        }
+    }
+
+    public synchronized State state() {
+
+        return state;
+    }
+
+    /**
+     * Number of times breaker opened
+     */
+    public synchronized long opened() {
+
+        return opened;
+    }
+
+    /**
+     * Number of calls not let through
+     */
+    public synchronized long rejected() {
+
+        return rejected;
+    }
+}
@@ -34,6 +34,11 @@ import org.kohsuke.stapler.DataBoundConstructor;
  */
 public class DefaultScheduler extends Scheduler {
 
+    /**
+     * Instance used when there is no scheduler configured
+     */
+    /*package*/ static final DefaultScheduler INSTANCE = new DefaultScheduler();
+
     @DataBoundConstructor
     public DefaultScheduler() {
     }
@@ -44,6 +49,12 @@ public class DefaultScheduler extends Scheduler {
         return null;
     }
 
+    @Override
+    public boolean isPassThrough() {
+
+        return true;
+    }
+
     @Extension
     public static class Descriptor extends Scheduler.Descriptor {
 
@@ -24,13 +24,10 @@
 package org.jenkinsci.plugins.externalscheduler;
 
 import hudson.model.Node;
-import hudson.model.Queue;
 import hudson.model.Queue.BuildableItem;
 import hudson.model.queue.QueueTaskDispatcher;
 import hudson.model.queue.CauseOfBlockage;
 
-import java.util.logging.Logger;
-
 /**
  * Assign jobs to particular nodes when Jenkins asks.
  *
@@ -38,12 +35,12 @@ import java.util.logging.Logger;
  */
 public class Dispatcher extends QueueTaskDispatcher {
 
-    private final static Logger LOGGER = Logger.getLogger(
-            Dispatcher.class.getName()
-    );
-
     private final ExternalScheduler planner;
 
+    private final DispatcherDiagnostics diagnostics = new DispatcherDiagnostics();
+
+    private final BlockageCauses causes = new BlockageCauses();
+
     /*package*/ Dispatcher(final ExternalScheduler planner) {
 
         if (planner == null) throw new AssertionError("No planner");
@@ -53,52 +50,55 @@ public class Dispatcher extends QueueTaskDispatcher {
 
     public CauseOfBlockage canTake(final Node node, final BuildableItem item) {
 
-        return assignToNode(node, item)
-                ? null
-                : notAssignedToNode(node, item)
-        ;
-    }
-
-    private boolean assignToNode(final Node node, final BuildableItem item) {
+        // Nothing to dispatch for pass-through scheduler
+        if (!planner.isEnabled()) return null;
 
         final NodeAssignments solution = planner.currentSolution();
 
         // Planner disabled
-        if (solution == null) return true;
-
-        final boolean assigned = node.getSelfLabel().toString().equals(solution.nodeName(item));
+        if (solution == null) return null;
 
-        logStatus(assigned, "assigning " + itemName(item) + " to " + node.getSelfLabel());
-
-        return assigned;
+        return canTake(solution, node, item);
     }
 
-    private String itemName(final Queue.BuildableItem item) {
+    /*package*/ CauseOfBlockage canTake(final NodeAssignments solution, final Node node, final BuildableItem item) {
 
-        return item.task.getDisplayName() + ":" + item.id;
-    }
+        final int handle = solution.nodeHandle(node);
 
-    private void logStatus(final boolean status, String message) {
+        // Nothing is planned for the node
+        if (solution.assignedCount(handle) == 0) {
+
+            return notAssignedToNode(solution, node, item, NotAssignedCause.Reason.NOT_ASSIGNED);
+        }
 
-        if (!status) {
+        final int assigned = solution.assignedNode(item.id);
+        if (assigned == handle) {
 
-            message = "not " + message;
+            diagnostics.assigned(item, node);
+            return null;
         }
 
-        LOGGER.info(message);
+        return notAssignedToNode(solution, node, item, assigned == NodeAssignments.NOT_ASSIGNED
+                ? unassigned(solution, item)
+                : NotAssignedCause.Reason.NOT_ASSIGNED
+        );
     }
 
-    private CauseOfBlockage notAssignedToNode(final Node node, final BuildableItem item) {
+    private NotAssignedCause.Reason unassigned(final NodeAssignments solution, final BuildableItem item) {
 
-        return new CauseOfBlockage() {
+        if (solution.isGroupIncomplete(item.id)) return NotAssignedCause.Reason.GROUP_INCOMPLETE;
+
+        return solution.isWaiting(item.id)
+                ? NotAssignedCause.Reason.WAITING
+                : NotAssignedCause.Reason.NOT_PLANNED
+        ;
+    }
 
-            @Override
-            public String getShortDescription() {
+    private CauseOfBlockage notAssignedToNode(
+            final NodeAssignments solution, final Node node, final BuildableItem item, final NotAssignedCause.Reason reason
+    ) {
 
-                return String.format(
-                        "External scheduler decided not to assign %s to %s", item.toString(), node.toString()
-                );
-            }
-        };
+        diagnostics.rejected(item, node);
+        return causes.get(solution, node, reason);
     }
 }
\ No newline at end of file
@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Report {@link Dispatcher} decisions without flooding the log.
+ *
+ * Nothing is done unless the logger is enabled. On {@link Level#FINE}
+ * assignments are logged and rejections are aggregated into periodic summary.
+ * On {@link Level#FINEST} individual rejections are traced for a sample of
+ * items, at most once per item in summary interval. Levels can be changed at
+ * runtime from Jenkins log configuration.
+ *
+ * @author ogondza
+ */
+public final class DispatcherDiagnostics {
+
+    private final static Logger LOGGER = Logger.getLogger(
+            DispatcherDiagnostics.class.getName()
+    );
+
+    /**
+     * Summary interval in milliseconds
+     */
+    /*package*/ static final long SUMMARY_INTERVAL = Long.getLong(
+            DispatcherDiagnostics.class.getName() + ".summaryInterval", 60000
+    );
+
+    /**
+     * Trace every n-th item only
+     */
+    /*package*/ static final int TRACE_SAMPLE = Integer.getInteger(
+            DispatcherDiagnostics.class.getName() + ".traceSample", 1
+    );
+
+    /**
+     * Maximal number of items reported in summary
+     */
+    private static final int SUMMARY_ITEMS = 20;
+
+    private final ConcurrentHashMap<Integer, Blocked> blocked = new ConcurrentHashMap<Integer, Blocked>();
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    /**
+     * Item was assigned to node
+     */
+    public void assigned(final Queue.BuildableItem item, final Node node) {
+
+        if (!LOGGER.isLoggable(Level.FINE)) return;
+
+        LOGGER.log(Level.FINE, "Assigning {0} to {1}", new Object[] {new ItemName(item), node.getSelfLabel()});
+        summarizeIfDue();
+    }
+
+    /**
+     * Item was not assigned to node
+     */
+    public void rejected(final Queue.BuildableItem item, final Node node) {
+
+        if (!LOGGER.isLoggable(Level.FINE)) return;
+
+        rejections.incrementAndGet();
+
+        Blocked entry = blocked.get(item.id);
+        if (entry == null) {
+
+            final Blocked created = new Blocked(item);
+            entry = blocked.putIfAbsent(item.id, created);
+            if (entry == null) entry = created;
+        }
+
+        final int count = entry.count.incrementAndGet();
+        if (count == 1 && LOGGER.isLoggable(Level.FINEST) && sampled(item)) {
+
+            LOGGER.log(Level.FINEST, "Not assigning {0} to {1}", new Object[] {new ItemName(item), node.getSelfLabel()});
+        }
+
+        summarizeIfDue();
+    }
+
+    private boolean sampled(final Queue.BuildableItem item) {
+
+        return TRACE_SAMPLE <= 1 || item.id % TRACE_SAMPLE == 0;
+    }
+
+    private void summarizeIfDue() {
+
+        final long start = windowStart.get();
+        final long now = System.nanoTime();
+        if (now - start < TimeUnit.MILLISECONDS.toNanos(SUMMARY_INTERVAL)) return;
+
+        // Only one thread summarizes
+        if (!windowStart.compareAndSet(start, now)) return;
+
+        summarize();
+    }
+
+    /*package*/ void summarize() {
+
+        final List<Blocked> entries = new ArrayList<Blocked>(blocked.values());
+        blocked.clear();
+        final long total = rejections.getAndSet(0);
+
+        if (entries.isEmpty()) return;
+
+        Collections.sort(entries, new Comparator<Blocked>() {
+
+            public int compare(final Blocked o1, final Blocked o2) {
+
+                return o2.count.get() - o1.count.get();
+            }
+        });
+
+        final StringBuilder summary = new StringBuilder();
+        summary.append(String.format(
+                "External scheduler rejected %d assignments of %d items:", total, entries.size()
+        ));
+
+        for (final Blocked entry: entries.subList(0, Math.min(SUMMARY_ITEMS, entries.size()))) {
+
+            summary.append(String.format("%n  %s blocked %d times", new ItemName(entry.item), entry.count.get()));
+        }
+
+        if (entries.size() > SUMMARY_ITEMS) {
+
+            summary.append(String.format("%n  ... and %d more", entries.size() - SUMMARY_ITEMS));
+        }
+
+        LOGGER.fine(summary.toString());
+    }
+
+    private static final class Blocked {
+
+        private final Queue.BuildableItem item;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Blocked(final Queue.BuildableItem item) {
+
+            this.item = item;
+        }
+    }
+
+    /**
+     * Format item name only when message is formatted
+     */
+    private static final class ItemName {
+
+        private final Queue.BuildableItem item;
+
+        private ItemName(final Queue.BuildableItem item) {
+
+            this.item = item;
+        }
+
+        @Override
+        public String toString() {
+
+            return item.task.getDisplayName() + ":" + item.id;
+        }
+    }
+}
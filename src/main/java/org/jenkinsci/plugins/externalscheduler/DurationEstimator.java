@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Item;
+import hudson.model.Queue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Streaming statistics of build durations per job.
+ *
+ * Every job keeps exponentially weighted moving average of its durations and
+ * a histogram of logarithmic buckets, two per power of two, so percentiles are
+ * known within about a sixth of their value. Histogram is halved periodically
+ * so recent builds prevail. Memory per job is bounded and queries take
+ * constant time.
+ *
+ * Statistics for at most {@link #MAX_JOBS} most recently built jobs are kept.
+ *
+ * @author ogondza
+ */
+public final class DurationEstimator {
+
+    /*package*/ static final int MAX_JOBS = Integer.getInteger(
+            DurationEstimator.class.getName() + ".maxJobs", 10000
+    );
+
+    /**
+     * Weight of the latest duration in moving average
+     */
+    /*package*/ static final double ALPHA = 0.3;
+
+    /**
+     * Histogram is halved when it gets this many builds
+     */
+    /*package*/ static final int MAX_WEIGHT = 1024;
+
+    private static final int BUCKETS = 64;
+
+    /**
+     * Guarded by this
+     */
+    private final LinkedHashMap<String, Stats> jobs;
+
+    public DurationEstimator() {
+
+        this(MAX_JOBS);
+    }
+
+    /*package*/ DurationEstimator(final int maxJobs) {
+
+        if (maxJobs <= 0) throw new IllegalArgumentException("Estimator must hold at least one job");
+
+        this.jobs = new LinkedHashMap<String, Stats>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Stats> eldest) {
+
+                return size() > maxJobs;
+            }
+        };
+    }
+
+    /**
+     * Record duration of finished build
+     *
+     * @param duration Duration in milliseconds
+     */
+    public synchronized void record(final String job, final long duration) {
+
+        if (job == null || duration < 0) return;
+
+        Stats stats = jobs.get(job);
+        if (stats == null) {
+
+            stats = new Stats();
+            jobs.put(job, stats);
+        }
+
+        stats.add(duration);
+    }
+
+    /**
+     * Moving average of job duration
+     *
+     * @return Duration in milliseconds or -1 if not known.
+     */
+    public synchronized long average(final String job) {
+
+        final Stats stats = jobs.get(job);
+        return stats == null ? -1 : Math.round(stats.average);
+    }
+
+    /**
+     * Duration given fraction of recent builds did not exceed
+     *
+     * @param fraction Number between 0 and 1. 0.5 for median.
+     * @return Duration in milliseconds or -1 if not known.
+     */
+    public synchronized long percentile(final String job, final double fraction) {
+
+        if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("Invalid fraction: " + fraction);
+
+        final Stats stats = jobs.get(job);
+        return stats == null ? -1 : stats.percentile(fraction);
+    }
+
+    /**
+     * Number of builds recorded for job
+     */
+    public synchronized long builds(final String job) {
+
+        final Stats stats = jobs.get(job);
+        return stats == null ? 0 : stats.builds;
+    }
+
+    /**
+     * Expected duration of item
+     *
+     * @return Moving average of job duration or Jenkins estimate if there is no history.
+     * Duration in milliseconds or -1 if not known.
+     */
+    public long estimate(final Queue.BuildableItem item) {
+
+        final long average = average(job(item.task));
+        if (average >= 0) return average;
+
+        final long estimate = item.task.getEstimatedDuration();
+        return estimate >= 0 ? estimate : -1;
+    }
+
+    /**
+     * Name of job statistics are kept for
+     */
+    public static String job(final Object task) {
+
+        return task instanceof Item
+                ? ((Item) task).getFullName()
+                : ((Queue.Task) task).getName()
+        ;
+    }
+
+    /*package*/ static int bucket(final long duration) {
+
+        if (duration < 2) return 0;
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(duration);
+        final int half = (int) (duration >>> (exponent - 1)) & 1;
+        return Math.min(2 * exponent + half, BUCKETS - 1);
+    }
+
+    /**
+     * Duration in the middle of bucket
+     */
+    /*package*/ static long representative(final int bucket) {
+
+        final int exponent = bucket / 2;
+        final long lower = (1L << exponent) + (bucket % 2) * ((1L << exponent) >> 1);
+        final long upper = bucket % 2 == 0 && exponent > 0
+                ? lower + ((1L << exponent) >> 1)
+                : 1L << (exponent + 1)
+        ;
+
+        return (lower + upper) / 2;
+    }
+
+    private static final class Stats {
+
+        private final int[] histogram = new int[BUCKETS];
+        private int weight = 0;
+        private long builds = 0;
+        private double average;
+
+        private void add(final long duration) {
+
+            average = builds == 0
+                    ? duration
+                    : ALPHA * duration + (1 - ALPHA) * average
+            ;
+            builds++;
+
+            if (weight >= MAX_WEIGHT) {
+
+                weight = 0;
+                for (int i = 0; i < BUCKETS; i++) {
+
+                    histogram[i] >>= 1;
+                    weight += histogram[i];
+                }
+            }
+
+            histogram[bucket(duration)]++;
+            weight++;
+        }
+
+        private long percentile(final double fraction) {
+
+            final long rank = Math.max(1, (long) Math.ceil(fraction * weight));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+
+                seen += histogram[i];
+                if (seen >= rank) return representative(i);
+            }
+
+            return representative(BUCKETS - 1);
+        }
+    }
+}
@@ -44,6 +44,10 @@ public final class ExternalScheduler extends Plugin implements Describable<Exter
 
     private static ExternalScheduler INSTANCE;
 
+    private final SolutionCache cache = new SolutionCache(SolutionRefresher.background());
+
+    private volatile DescriptorImpl descriptor;
+
     public ExternalScheduler() {
 
         INSTANCE = this;
@@ -65,39 +69,172 @@ public final class ExternalScheduler extends Plugin implements Describable<Exter
      */
     public Scheduler activeScheduler() {
 
-        try {
+        return configuration().scheduler();
+    }
+
+    /**
+     * Plugin takes part in scheduling
+     *
+     * @return false if the active scheduler leaves all decisions to Jenkins.
+     */
+    public boolean isEnabled() {
 
-            return getDescriptor().configuredProviders().get(0);
-        } catch (IndexOutOfBoundsException ex) {
+        return configuration().enabled();
+    }
 
-            return new DefaultScheduler();
-        }
+    /**
+     * Get current plugin configuration
+     *
+     * @return Latest configuration snapshot. Never null.
+     */
+    public Configuration configuration() {
+
+        return getDescriptor().configuration();
     }
 
     /**
      * Get external scheduler solution
      *
-     * @return New assignments
+     * Solution is computed in background and reused until queue or node state
+     * changes.
+     *
+     * @return Latest assignments or null in case there is none recent enough.
      * @see Scheduler.solution()
      */
     public NodeAssignments currentSolution() {
 
-        return activeScheduler().solution();
+        final Configuration config = configuration();
+        return cache.solution(config.scheduler(), config.stateProvider(), config.maxStaleness() * 1000);
+    }
+
+    /**
+     * Get cache of scheduler solutions
+     */
+    public SolutionCache solutionCache() {
+
+        return cache;
+    }
+
+    @Override
+    public void stop() throws Exception {
+
+        cache.refresher().shutdown();
+        activeScheduler().stop();
+    }
+
+    /**
+     * Queue or node state has changed so the solution needs to be recomputed
+     */
+    /*package*/ void stateChanged() {
+
+        cache.invalidate();
+    }
+
+    /**
+     * Item left the queue to be built
+     */
+    /*package*/ void itemLeft(final int id) {
+
+        activeScheduler().itemsLeft(id);
+        cache.invalidate();
     }
 
     public DescriptorImpl getDescriptor() {
 
-        return (DescriptorImpl) Jenkins.getInstance().getDescriptorOrDie(getClass());
+        // Benign race: every thread resolves the same singleton
+        if (descriptor == null) {
+
+            descriptor = (DescriptorImpl) Jenkins.getInstance().getDescriptorOrDie(getClass());
+        }
+
+        return descriptor;
+    }
+
+    /**
+     * Immutable snapshot of plugin configuration
+     *
+     * Published atomically on every reconfiguration so readers see either
+     * the old or the new configuration as a whole.
+     */
+    public static final class Configuration {
+
+        private final Scheduler scheduler;
+        private final StateProvider stateProvider;
+        private final long maxStaleness;
+        private final boolean enabled;
+
+        /**
+         * @param stateProvider Provider to use or null for the one shared by schedulers
+         */
+        /*package*/ Configuration(
+                final Scheduler scheduler, final StateProvider stateProvider, final long maxStaleness
+        ) {
+
+            if (scheduler == null) throw new IllegalArgumentException("Scheduler is null");
+
+            this.scheduler = scheduler;
+            this.stateProvider = stateProvider;
+            this.maxStaleness = maxStaleness;
+            this.enabled = !scheduler.isPassThrough();
+        }
+
+        /**
+         * @return First configured scheduler or {@link DefaultScheduler} if there is none. Never null.
+         */
+        public Scheduler scheduler() {
+
+            return scheduler;
+        }
+
+        /**
+         * @throws IllegalStateException In case Jenkins is not running.
+         */
+        public StateProvider stateProvider() {
+
+            // Shared provider follows Jenkins instance
+            return stateProvider == null ? Scheduler.stateProvider() : stateProvider;
+        }
+
+        /**
+         * @return Maximal age of served solution in seconds.
+         */
+        public long maxStaleness() {
+
+            return maxStaleness;
+        }
+
+        /**
+         * @return false if the scheduler leaves all decisions to Jenkins.
+         */
+        public boolean enabled() {
+
+            return enabled;
+        }
     }
 
     @Extension
     public static class DescriptorImpl extends Descriptor<ExternalScheduler> {
 
+        /**
+         * Default maximal age of served solution in seconds
+         */
+        /*package*/ static final long DEFAULT_MAX_STALENESS = 30;
+
         private DescribableList<Scheduler, Scheduler.Descriptor> builders;
 
+        private long maxStaleness = DEFAULT_MAX_STALENESS;
+
+        private transient volatile Configuration configuration;
+
         public DescriptorImpl() {
 
             load();
+            if (builders == null) {
+
+                builders = emptyProviders();
+            }
+
+            publish();
         }
 
         @Override
@@ -115,16 +252,53 @@ public final class ExternalScheduler extends Plugin implements Describable<Exter
             }
 
             builders = newBuilders;
+            maxStaleness = formData.optLong("maxStaleness", DEFAULT_MAX_STALENESS);
+            publish();
             save();
             return true;
         }
 
+        /**
+         * Get current configuration snapshot
+         */
+        public Configuration configuration() {
+
+            return configuration;
+        }
+
+        private void publish() {
+
+            final Scheduler active = builders.isEmpty()
+                    ? DefaultScheduler.INSTANCE
+                    : builders.get(0)
+            ;
+
+            final Configuration previous = configuration;
+            configuration = new Configuration(active, null, maxStaleness);
+            PlannedOrder.use(active);
+
+            // Replaced scheduler is not asked for solutions any more
+            if (previous != null && previous.scheduler() != active) {
+
+                previous.scheduler().stop();
+            }
+        }
+
         @Override
         public String getDisplayName() {
 
             return "Use custom scheduler implementation";
         }
 
+        /**
+         * Maximal age of solution in seconds to be used when scheduler does not deliver a new one in time.
+         * Default Jenkins scheduling is used once there is no solution recent enough.
+         */
+        public long getMaxStaleness() {
+
+            return maxStaleness;
+        }
+
         public List<Scheduler.Descriptor> providerKinds() {
 
             return Jenkins.getInstance().getDescriptorList(Scheduler.class);
@@ -132,11 +306,6 @@ public final class ExternalScheduler extends Plugin implements Describable<Exter
 
         public DescribableList<Scheduler, Scheduler.Descriptor> configuredProviders() {
 
-            if (builders == null) {
-
-                builders = emptyProviders();
-            }
-
             return builders;
         }
 
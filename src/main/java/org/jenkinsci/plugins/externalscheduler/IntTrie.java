@@ -0,0 +1,393 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import java.util.Arrays;
+
+/**
+ * Persistent map of int keys to non-zero int values.
+ *
+ * Hash array mapped trie consuming five bits of key hash per level. Every
+ * trie node keeps its entries and subnodes in separate arrays compressed by
+ * bitmaps. Updates copy only nodes on the path to the changed entry so
+ * derived maps share the rest with the original and cost O(log32 n) each.
+ * Hash is a bijection so distinct keys always part at some level.
+ *
+ * Editor applies series of updates in place on nodes it has copied already
+ * so batches do not copy the same path repeatedly. Maps are immutable once
+ * published by {@link Editor#done()}.
+ *
+ * @author ogondza
+ */
+/*package*/ final class IntTrie {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    /*package*/ static final IntTrie EMPTY = new IntTrie(new Node(null, 0, 0, new int[0], new int[0], new Node[0]), 0);
+
+    private final Node root;
+    private final int size;
+
+    private IntTrie(final Node root, final int size) {
+
+        this.root = root;
+        this.size = size;
+    }
+
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * @return Value for the key or zero if there is none
+     */
+    public int get(final int key) {
+
+        return get(root, key);
+    }
+
+    private static int get(final Node root, final int key) {
+
+        final int hash = hash(key);
+        Node node = root;
+        for (int shift = 0; ; shift += BITS) {
+
+            final int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+
+                final int index = index(node.dataMap, bit);
+                return node.keys[index] == key ? node.values[index] : 0;
+            }
+
+            if ((node.nodeMap & bit) == 0) return 0;
+
+            node = node.nodes[index(node.nodeMap, bit)];
+        }
+    }
+
+    public Editor edit() {
+
+        return new Editor(this);
+    }
+
+    /**
+     * Copy entries to arrays of at least {@link #size()} length
+     */
+    public void entries(final int[] keys, final int[] values) {
+
+        entries(root, keys, values, 0);
+    }
+
+    /**
+     * Keys in ascending order
+     *
+     * @return New array. Never null.
+     */
+    public int[] keys() {
+
+        final int[] keys = new int[size];
+        entries(root, keys, new int[size], 0);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static int entries(final Node node, final int[] keys, final int[] values, int offset) {
+
+        System.arraycopy(node.keys, 0, keys, offset, node.keys.length);
+        System.arraycopy(node.values, 0, values, offset, node.values.length);
+        offset += node.keys.length;
+        for (final Node child: node.nodes) {
+
+            offset = entries(child, keys, values, offset);
+        }
+
+        return offset;
+    }
+
+    /**
+     * Applies updates to a map creating new one
+     */
+    /*package*/ static final class Editor {
+
+        private Object owner = new Object();
+        private Node root;
+        private int size;
+
+        /**
+         * Value replaced or removed by last update, zero if there was none
+         */
+        private int previous;
+
+        private Editor(final IntTrie trie) {
+
+            this.root = trie.root;
+            this.size = trie.size;
+        }
+
+        public int get(final int key) {
+
+            return IntTrie.get(root, key);
+        }
+
+        /**
+         * @param value Non-zero value
+         * @return Previous value or zero if there was none
+         */
+        public int put(final int key, final int value) {
+
+            if (value == 0) throw new IllegalArgumentException("Zero value");
+
+            previous = 0;
+            root = put(root, key, hash(key), value, 0);
+            if (previous == 0) size++;
+            return previous;
+        }
+
+        /**
+         * @return Removed value or zero if there was none
+         */
+        public int remove(final int key) {
+
+            previous = 0;
+            root = remove(root, key, hash(key), 0);
+            if (previous != 0) size--;
+            return previous;
+        }
+
+        public int size() {
+
+            return size;
+        }
+
+        /**
+         * Publish the map. Editor can be used further without affecting it.
+         */
+        public IntTrie done() {
+
+            owner = new Object();
+            return new IntTrie(root, size);
+        }
+
+        private Node put(final Node node, final int key, final int hash, final int value, final int shift) {
+
+            final int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+
+                final int index = index(node.dataMap, bit);
+                if (node.keys[index] == key) {
+
+                    previous = node.values[index];
+                    if (previous == value) return node;
+
+                    final Node edited = editable(node);
+                    edited.values[index] = value;
+                    return edited;
+                }
+
+                // Push both entries one level down
+                final Node pair = pair(node.keys[index], node.values[index], key, value, hash, shift + BITS);
+                final int nodeIndex = index(node.nodeMap, bit);
+                return new Node(
+                        owner, node.dataMap ^ bit, node.nodeMap | bit,
+                        without(node.keys, index), without(node.values, index), with(node.nodes, nodeIndex, pair)
+                );
+            }
+
+            if ((node.nodeMap & bit) != 0) {
+
+                final int index = index(node.nodeMap, bit);
+                final Node child = node.nodes[index];
+                final Node updated = put(child, key, hash, value, shift + BITS);
+                if (updated == child) return node;
+
+                final Node edited = editable(node);
+                edited.nodes[index] = updated;
+                return edited;
+            }
+
+            final int index = index(node.dataMap, bit);
+            return new Node(
+                    owner, node.dataMap | bit, node.nodeMap,
+                    with(node.keys, index, key), with(node.values, index, value), node.nodes.clone()
+            );
+        }
+
+        private Node pair(
+                final int key1, final int value1, final int key2, final int value2, final int hash2, final int shift
+        ) {
+
+            final int hash1 = hash(key1);
+            final int bit1 = bit(hash1, shift);
+            final int bit2 = bit(hash2, shift);
+            if (bit1 == bit2) {
+
+                final Node child = pair(key1, value1, key2, value2, hash2, shift + BITS);
+                return new Node(owner, 0, bit1, new int[0], new int[0], new Node[] {child});
+            }
+
+            return ((hash1 >>> shift) & MASK) < ((hash2 >>> shift) & MASK)
+                    ? new Node(owner, bit1 | bit2, 0, new int[] {key1, key2}, new int[] {value1, value2}, new Node[0])
+                    : new Node(owner, bit1 | bit2, 0, new int[] {key2, key1}, new int[] {value2, value1}, new Node[0])
+            ;
+        }
+
+        private Node remove(final Node node, final int key, final int hash, final int shift) {
+
+            final int bit = bit(hash, shift);
+            if ((node.dataMap & bit) != 0) {
+
+                final int index = index(node.dataMap, bit);
+                if (node.keys[index] != key) return node;
+
+                previous = node.values[index];
+                return new Node(
+                        owner, node.dataMap ^ bit, node.nodeMap,
+                        without(node.keys, index), without(node.values, index), node.nodes.clone()
+                );
+            }
+
+            if ((node.nodeMap & bit) == 0) return node;
+
+            final int index = index(node.nodeMap, bit);
+            final Node child = node.nodes[index];
+            final Node updated = remove(child, key, hash, shift + BITS);
+            if (updated == child) return node;
+
+            if (updated.nodeMap == 0 && updated.keys.length <= 1) {
+
+                // Pull the only remaining entry up to keep the trie shallow
+                final Node[] nodes = without(node.nodes, index);
+                if (updated.keys.length == 0) return new Node(
+                        owner, node.dataMap, node.nodeMap ^ bit, node.keys.clone(), node.values.clone(), nodes
+                );
+
+                final int dataIndex = index(node.dataMap, bit);
+                return new Node(
+                        owner, node.dataMap | bit, node.nodeMap ^ bit,
+                        with(node.keys, dataIndex, updated.keys[0]), with(node.values, dataIndex, updated.values[0]), nodes
+                );
+            }
+
+            final Node edited = editable(node);
+            edited.nodes[index] = updated;
+            return edited;
+        }
+
+        /**
+         * Node this editor can modify in place
+         */
+        private Node editable(final Node node) {
+
+            if (node.owner == owner) return node;
+
+            return new Node(owner, node.dataMap, node.nodeMap, node.keys.clone(), node.values.clone(), node.nodes.clone());
+        }
+    }
+
+    /**
+     * Node of the trie
+     *
+     * Arrays are never shared between nodes so the owner can modify them.
+     */
+    private static final class Node {
+
+        /**
+         * Editor permitted to modify the node
+         */
+        private final Object owner;
+        private final int dataMap;
+        private final int nodeMap;
+        private final int[] keys;
+        private final int[] values;
+        private final Node[] nodes;
+
+        private Node(
+                final Object owner, final int dataMap, final int nodeMap,
+                final int[] keys, final int[] values, final Node[] nodes
+        ) {
+
+            this.owner = owner;
+            this.dataMap = dataMap;
+            this.nodeMap = nodeMap;
+            this.keys = keys;
+            this.values = values;
+            this.nodes = nodes;
+        }
+    }
+
+    private static int hash(final int key) {
+
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int bit(final int hash, final int shift) {
+
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * Position of bit among bits set in map
+     */
+    private static int index(final int map, final int bit) {
+
+        return Integer.bitCount(map & (bit - 1));
+    }
+
+    private static int[] with(final int[] array, final int index, final int value) {
+
+        final int[] copy = new int[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = value;
+        System.arraycopy(array, index, copy, index + 1, array.length - index);
+        return copy;
+    }
+
+    private static Node[] with(final Node[] array, final int index, final Node value) {
+
+        final Node[] copy = new Node[array.length + 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        copy[index] = value;
+        System.arraycopy(array, index, copy, index + 1, array.length - index);
+        return copy;
+    }
+
+    private static int[] without(final int[] array, final int index) {
+
+        final int[] copy = new int[array.length - 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+
+    private static Node[] without(final Node[] array, final int index) {
+
+        final Node[] copy = new Node[array.length - 1];
+        System.arraycopy(array, 0, copy, 0, index);
+        System.arraycopy(array, index + 1, copy, index, copy.length - index);
+        return copy;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Nodes matching label expressions.
+ *
+ * Matches are computed once per label for given list of nodes, so items with
+ * identical labels share the result. Matching nodes are identified by their
+ * index in the list.
+ *
+ * Matches are kept until nodes change their state or configuration, see
+ * {@link #nodesChanged()}, or until the list holds different nodes. Lists
+ * {@link AbstractCiStateProvider} recreates with the same nodes reuse the
+ * matches. Jenkins interns labels so label instance stands for its expression.
+ *
+ * @author ogondza
+ */
+public final class LabelMatchCache {
+
+    private final AtomicReference<Generation> generation = new AtomicReference<Generation>();
+
+    private final AtomicLong nodeVersion = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get nodes item with given label can run on
+     *
+     * @param label Assigned label or null for items that can run anywhere
+     * @param nodes Candidate nodes
+     * @return New BitSet of indices of matching nodes.
+     */
+    public BitSet matching(final Label label, final List<Node> nodes) {
+
+        final Generation current = generation(nodes);
+
+        BitSet matching = current.matches.get(label);
+        if (matching == null) {
+
+            misses.incrementAndGet();
+            matching = match(label, nodes);
+
+            // Racing threads compute the same matches, either one will do
+            current.matches.put(label, matching);
+        } else {
+
+            hits.incrementAndGet();
+        }
+
+        return (BitSet) matching.clone();
+    }
+
+    /**
+     * Get nodes given item can be executed on
+     *
+     * Nodes matching item label are further filtered by {@link Node#canTake(Queue.BuildableItem)}
+     * as the result depends on item itself.
+     *
+     * @param item Item to place
+     * @param nodes Candidate nodes
+     * @return New BitSet of indices of nodes accepting the item.
+     */
+    public BitSet candidates(final Queue.BuildableItem item, final List<Node> nodes) {
+
+        final BitSet candidates = matching(item.getAssignedLabel(), nodes);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+
+            if (nodes.get(i).canTake(item) != null) {
+
+                candidates.clear(i);
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Nodes has changed their state or configuration
+     */
+    /*package*/ void nodesChanged() {
+
+        nodeVersion.incrementAndGet();
+    }
+
+    private Generation generation(final List<Node> nodes) {
+
+        final long version = nodeVersion.get();
+        final Generation current = generation.get();
+        if (current != null && current.version == version && current.nodes == nodes) return current;
+
+        // Remember the new list not to compare it next time
+        final Generation created = current != null && current.validFor(version, nodes)
+                ? new Generation(version, nodes, current.matches)
+                : new Generation(version, nodes, Collections.synchronizedMap(new IdentityHashMap<Label, BitSet>()))
+        ;
+        return generation.compareAndSet(current, created)
+                ? created
+                : generation(nodes)
+        ;
+    }
+
+    private static BitSet match(final Label label, final List<Node> nodes) {
+
+        final BitSet matching = new BitSet(nodes.size());
+        if (label == null) {
+
+            for (int i = 0; i < nodes.size(); i++) {
+
+                if (nodes.get(i).getMode() == Node.Mode.NORMAL) {
+
+                    matching.set(i);
+                }
+            }
+        } else {
+
+            final Collection<Node> labeled = label.getNodes();
+            for (int i = 0; i < nodes.size(); i++) {
+
+                if (labeled.contains(nodes.get(i))) {
+
+                    matching.set(i);
+                }
+            }
+        }
+
+        return matching;
+    }
+
+    /**
+     * Number of labels served from cache
+     */
+    public long hits() {
+
+        return hits.get();
+    }
+
+    /**
+     * Number of labels matched against nodes
+     */
+    public long misses() {
+
+        return misses.get();
+    }
+
+    private static final class Generation {
+
+        private final long version;
+        private final List<Node> nodes;
+
+        private final Map<Label, BitSet> matches;
+
+        private Generation(final long version, final List<Node> nodes, final Map<Label, BitSet> matches) {
+
+            this.version = version;
+            this.nodes = nodes;
+            this.matches = matches;
+        }
+
+        /**
+         * Matches apply to the same nodes in the same order
+         */
+        private boolean validFor(final long version, final List<Node> nodes) {
+
+            if (this.version != version) return false;
+            if (this.nodes == nodes) return true;
+            if (this.nodes.size() != nodes.size()) return false;
+
+            for (int i = 0; i < nodes.size(); i++) {
+
+                if (this.nodes.get(i) != nodes.get(i)) return false;
+            }
+
+            return true;
+        }
+    }
+}
@@ -26,56 +26,707 @@ package org.jenkinsci.plugins.externalscheduler;
 import hudson.model.Node;
 import hudson.model.Queue;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Class to represent Task to Node assignment
  *
+ * Assignments are stored in persistent trie of primitive ints mapping item id
+ * to index of node name. Every node name is stored only once no matter how
+ * many items are assigned to it. Lookups do not allocate.
+ *
+ * Assignments are immutable. Derived assignments, see
+ * {@link #builder(NodeAssignments)}, {@link #withAssigned(int, String)} and
+ * {@link #withRemoved(int)}, share tries of assignments, per node counts,
+ * planned order, waiting items and groups with the original except for the
+ * paths to changed entries. A patch costs O(log n) time and memory per
+ * changed item plus the size of groups it touches. Node names are copied
+ * only when a patch introduces new node.
+ *
+ * Nodes are identified by integer handles, indices to node name dictionary, so
+ * deciding whether an item is assigned to a node is integer comparison. Node
+ * is resolved to its handle once and the handle is reused by assignments with
+ * the same node names until nodes are reconfigured.
+ *
+ * Number of items assigned to every node is kept up to date. Items assigned
+ * to particular node are indexed when first asked for. The index takes one
+ * int per assignment and one per node name and it is not carried over to
+ * derived assignments.
+ *
+ * Besides assignments the plan can define the order Jenkins should consider
+ * items in and items that should deliberately stay in the queue. Waiting items
+ * are never assigned.
+ *
+ * Items can be grouped so they are assigned all or none. Groups with a member
+ * that is not assigned or waiting are dropped when assignments are built and
+ * all their members are left waiting. Groups sharing members are merged.
+ * Complete groups are kept so derived assignments drop them once some of
+ * their members is unassigned or left waiting.
+ *
  * @author ogondza
  */
 public final class NodeAssignments {
 
+    /**
+     * Incremented whenever nodes are added, removed or reconfigured
+     */
+    private static final AtomicInteger nodeGeneration = new AtomicInteger();
+
     private static final NodeAssignments EMPTY = NodeAssignments.builder().build();
 
-    private final Map<Integer, String> assignments;
+    /**
+     * Handle of node that has nothing assigned or item that is not assigned to any node
+     */
+    public static final int NOT_ASSIGNED = -1;
+
+    /**
+     * Rank of item with no order planned. Such items follow all ranked ones.
+     */
+    public static final int NOT_RANKED = Integer.MAX_VALUE;
+
+    /**
+     * Item id to index of node name plus one
+     */
+    private final IntTrie assignments;
+
+    private final String[] names;
+
+    private final Map<String, Integer> nameIndex;
+
+    /**
+     * Node handle to number of items assigned to the node. Nodes with nothing
+     * assigned have no entry.
+     */
+    private final IntTrie counts;
+
+    /**
+     * Items assigned to nodes, created when first needed
+     */
+    private volatile Index index;
+
+    /**
+     * Ranked item ids to their rank plus one
+     */
+    private final IntTrie ranks;
+    private final int nextRank;
+
+    /**
+     * Ids of items left waiting mapped to one
+     */
+    private final IntTrie waiting;
+
+    /**
+     * Ids of members of dropped groups mapped to one. Subset of {@link #waiting}.
+     */
+    private final IntTrie incomplete;
+
+    /**
+     * Member of complete group to the next member plus one. Members of every
+     * group form a cycle.
+     */
+    private final IntTrie groups;
+
+    /**
+     * Resolved node handles. Shared by assignments with the same node names.
+     */
+    private final Handles handles;
 
     public static NodeAssignments.Builder builder() {
 
         return new Builder();
     }
 
+    /**
+     * Create builder initialized with existing assignments
+     *
+     * Builder shares data with base until they are modified. Groups that
+     * were not complete in base stay incomplete unless their members are
+     * unassigned. Groups complete in base are checked again in case their
+     * members are unassigned or left waiting.
+     */
+    public static NodeAssignments.Builder builder(final NodeAssignments base) {
+
+        return new Builder(base);
+    }
+
     public static NodeAssignments empty() {
 
         return EMPTY;
     }
 
+    /**
+     * Derive assignments with item assigned to node
+     */
+    public NodeAssignments withAssigned(final int taskId, final String nodeName) {
+
+        return builder(this).assign(taskId, nodeName).build();
+    }
+
+    /**
+     * Derive assignments with item neither assigned nor waiting
+     */
+    public NodeAssignments withRemoved(final int taskId) {
+
+        return builder(this).unassign(taskId).build();
+    }
+
     public static final class Builder {
 
-        final Map<Integer, String> assignments = new HashMap<Integer, String>();
+        private final Map<Node, Integer> nodeIndex = new IdentityHashMap<Node, Integer>();
+
+        /**
+         * Node names, shared with assignments until new name is added
+         */
+        private Map<String, Integer> nameIndex;
+        private String[] names;
+        private int nameCount;
+        private boolean namesShared;
+        private Handles handles;
+
+        private final IntTrie.Editor assignments;
+        private final IntTrie.Editor counts;
+
+        private final IntTrie.Editor ranks;
+        private int nextRank;
+
+        private final IntTrie.Editor waiting;
+
+        private final List<int[]> groups = new ArrayList<int[]>();
+
+        /**
+         * Complete groups of base assignments
+         */
+        private final IntTrie.Editor baseGroups;
+
+        /**
+         * Members of base groups the groups need to be checked for
+         */
+        private int[] touched = new int[0];
+        private int touchedSize = 0;
+
+        /**
+         * Members of groups that were incomplete in base assignments
+         */
+        private final IntTrie.Editor incomplete;
+
+        private Builder() {
+
+            nameIndex = new HashMap<String, Integer>();
+            names = new String[16];
+            assignments = IntTrie.EMPTY.edit();
+            counts = IntTrie.EMPTY.edit();
+            ranks = IntTrie.EMPTY.edit();
+            nextRank = 1;
+            waiting = IntTrie.EMPTY.edit();
+            baseGroups = IntTrie.EMPTY.edit();
+            incomplete = IntTrie.EMPTY.edit();
+        }
+
+        private Builder(final NodeAssignments base) {
+
+            nameIndex = base.nameIndex;
+            names = base.names;
+            nameCount = names.length;
+            namesShared = true;
+            handles = base.handles;
+
+            assignments = base.assignments.edit();
+            counts = base.counts.edit();
+            ranks = base.ranks.edit();
+            nextRank = base.nextRank;
+            waiting = base.waiting.edit();
+            baseGroups = base.groups.edit();
+            incomplete = base.incomplete.edit();
+        }
 
         public NodeAssignments.Builder assign(final int id, final String nodeName) {
 
-            assignments.put(id, nodeName);
-            return this;
+            if (nodeName == null) throw new IllegalArgumentException("No node name");
+
+            return put(id, nameIndex(nodeName));
         }
 
         public NodeAssignments.Builder assign(final Queue.BuildableItem item, final Node node) {
 
-            assignments.put(item.id, node.getSelfLabel().toString());
+            Integer index = nodeIndex.get(node);
+            if (index == null) {
+
+                index = nameIndex(name(node));
+                nodeIndex.put(node, index);
+            }
+
+            return put(item.id, index);
+        }
+
+        /**
+         * Append items to planned order
+         *
+         * Items are expected to be considered in order they were added in.
+         * Ordering item again moves it to the end.
+         */
+        public NodeAssignments.Builder order(final int... ids) {
+
+            for (final int id: ids) {
+
+                ranks.put(id, nextRank++);
+            }
+
+            return this;
+        }
+
+        /**
+         * Keep items in the queue even if there are nodes to take them
+         *
+         * Waiting items are not assigned even if there is an assignment for them.
+         */
+        public NodeAssignments.Builder leaveWaiting(final int... ids) {
+
+            for (final int id: ids) {
+
+                touch(id);
+                waiting.put(id, 1);
+                count(counts, assignments.remove(id), -1);
+            }
+
+            return this;
+        }
+
+        /**
+         * Assign items all or none
+         *
+         * In case some of the items is not assigned or left waiting, none of
+         * them is assigned and all are left waiting.
+         */
+        public NodeAssignments.Builder group(final int... ids) {
+
+            if (ids.length > 1) {
+
+                groups.add(ids.clone());
+            }
+
+            return this;
+        }
+
+        /**
+         * Remove items from assignments
+         *
+         * Items are neither assigned nor left waiting afterwards. Their place
+         * in planned order is kept.
+         */
+        public NodeAssignments.Builder unassign(final int... ids) {
+
+            for (final int id: ids) {
+
+                touch(id);
+                count(counts, assignments.remove(id), -1);
+                waiting.remove(id);
+                incomplete.remove(id);
+            }
+
+            return this;
+        }
+
+        /**
+         * Remove items from the plan entirely
+         *
+         * Items are neither assigned, left waiting nor ordered afterwards.
+         * Items are removed from complete groups of base assignments so the
+         * rest of the group stays assigned.
+         */
+        public NodeAssignments.Builder forget(final int... ids) {
+
+            for (final int id: ids) {
+
+                leaveGroup(id);
+            }
+
+            unassign(ids);
+
+            for (final int id: ids) {
+
+                ranks.remove(id);
+            }
+
             return this;
         }
 
+        /**
+         * Check group of base assignments item is member of
+         */
+        private void touch(final int id) {
+
+            if (baseGroups.get(id) == 0) return;
+
+            if (touchedSize == touched.length) {
+
+                touched = Arrays.copyOf(touched, Math.max(16, touched.length * 2));
+            }
+
+            touched[touchedSize++] = id;
+        }
+
+        /**
+         * Remove item from group of base assignments
+         */
+        private void leaveGroup(final int id) {
+
+            final int next = baseGroups.get(id) - 1;
+            if (next == -1) return;
+
+            int previous = next;
+            while (baseGroups.get(previous) - 1 != id) {
+
+                previous = baseGroups.get(previous) - 1;
+            }
+
+            baseGroups.remove(id);
+            if (previous == next) {
+
+                // Single member is no group
+                baseGroups.remove(next);
+            } else {
+
+                baseGroups.put(previous, next + 1);
+            }
+        }
+
+        private NodeAssignments.Builder put(final int id, final int node) {
+
+            // Waiting items are never assigned
+            if (waiting.get(id) != 0) return this;
+
+            final int previous = assignments.put(id, node);
+            if (previous != node) {
+
+                count(counts, previous, -1);
+                count(counts, node, 1);
+            }
+
+            return this;
+        }
+
+        private int nameIndex(final String nodeName) {
+
+            Integer index = nameIndex.get(nodeName);
+            if (index == null) {
+
+                if (namesShared) {
+
+                    nameIndex = new HashMap<String, Integer>(nameIndex);
+                    names = Arrays.copyOf(names, Math.max(16, names.length * 2));
+                    namesShared = false;
+                    handles = null;
+                } else if (nameCount == names.length) {
+
+                    names = Arrays.copyOf(names, names.length * 2);
+                }
+
+                index = nameCount;
+                nameIndex.put(nodeName, index);
+                names[nameCount++] = nodeName;
+            }
+
+            return index + 1;
+        }
+
         public NodeAssignments build() {
 
-            return new NodeAssignments(this);
+            final NodeAssignments built = new NodeAssignments(this);
+
+            // Following names are added to copies
+            nameIndex = built.nameIndex;
+            names = built.names;
+            namesShared = true;
+            handles = built.handles;
+
+            return built;
         }
     }
 
     private NodeAssignments(final NodeAssignments.Builder builder) {
 
-        this.assignments = Collections.unmodifiableMap(builder.assignments);
+        if (builder.namesShared) {
+
+            this.names = builder.names;
+            this.nameIndex = builder.nameIndex;
+            this.handles = builder.handles;
+        } else {
+
+            this.names = Arrays.copyOf(builder.names, builder.nameCount);
+            this.nameIndex = new HashMap<String, Integer>(builder.nameIndex);
+            this.handles = new Handles();
+        }
+
+        this.ranks = builder.ranks.done();
+        this.nextRank = builder.nextRank;
+
+        final List<Integer> dropped = new ArrayList<Integer>();
+        this.groups = groups(builder, dropped);
+
+        final IntTrie assignments = builder.assignments.done();
+        final IntTrie counts = builder.counts.done();
+        final IntTrie waiting = builder.waiting.done();
+        final IntTrie incomplete = builder.incomplete.done();
+        if (dropped.isEmpty()) {
+
+            this.assignments = assignments;
+            this.counts = counts;
+            this.waiting = waiting;
+            this.incomplete = incomplete;
+        } else {
+
+            // Builder stays intact so it can be built again once groups are completed
+            final IntTrie.Editor withoutDropped = assignments.edit();
+            final IntTrie.Editor droppedCounts = counts.edit();
+            final IntTrie.Editor droppedWaiting = waiting.edit();
+            final IntTrie.Editor droppedIncomplete = incomplete.edit();
+            for (final int id: dropped) {
+
+                count(droppedCounts, withoutDropped.remove(id), -1);
+                droppedWaiting.put(id, 1);
+                droppedIncomplete.put(id, 1);
+            }
+
+            this.assignments = withoutDropped.done();
+            this.counts = droppedCounts.done();
+            this.waiting = droppedWaiting.done();
+            this.incomplete = droppedIncomplete.done();
+        }
+    }
+
+    /**
+     * Add delta to number of items assigned to node
+     *
+     * @param node Index of node name plus one or zero for no node.
+     */
+    private static void count(final IntTrie.Editor counts, final int node, final int delta) {
+
+        if (node == 0) return;
+
+        final int count = counts.get(node - 1) + delta;
+        if (count == 0) {
+
+            counts.remove(node - 1);
+        } else {
+
+            counts.put(node - 1, count);
+        }
+    }
+
+    /**
+     * Item ids grouped by node handle
+     */
+    private static final class Index {
+
+        /**
+         * Item ids grouped by node handle, sorted within the group
+         */
+        private final int[] assignedItems;
+
+        /**
+         * Start of node group in {@link #assignedItems}. Group of node <tt>h</tt>
+         * spans from <tt>offsets[h]</tt> to <tt>offsets[h + 1]</tt>.
+         */
+        private final int[] offsets;
+
+        private Index(final IntTrie assignments, final IntTrie counts, final int nodes) {
+
+            offsets = new int[nodes + 1];
+            for (int handle = 0; handle < nodes; handle++) {
+
+                offsets[handle + 1] = offsets[handle] + counts.get(handle);
+            }
+
+            final int[] ids = new int[assignments.size()];
+            final int[] handles = new int[ids.length];
+            assignments.entries(ids, handles);
+
+            assignedItems = new int[ids.length];
+            final int[] next = Arrays.copyOf(offsets, nodes);
+            for (int i = 0; i < ids.length; i++) {
+
+                assignedItems[next[handles[i] - 1]++] = ids[i];
+            }
+
+            for (int handle = 0; handle < nodes; handle++) {
+
+                Arrays.sort(assignedItems, offsets[handle], offsets[handle + 1]);
+            }
+        }
+    }
+
+    private Index index() {
+
+        // Racing threads might create equivalent instances, either one will do
+        Index index = this.index;
+        if (index == null) {
+
+            index = new Index(assignments, counts, names.length);
+            this.index = index;
+        }
+
+        return index;
+    }
+
+    /**
+     * Resolve groups that can not be assigned as a whole
+     *
+     * Only new groups and groups of base assignments with members changed
+     * are checked, groups sharing members are merged.
+     *
+     * @param dropped Filled with members of groups that were dropped.
+     * @return Complete groups
+     */
+    private static IntTrie groups(final NodeAssignments.Builder builder, final List<Integer> dropped) {
+
+        final IntTrie base = builder.baseGroups.done();
+        if (builder.groups.isEmpty() && builder.touchedSize == 0) return base;
+
+        final Components components = new Components();
+        for (final int[] members: builder.groups) {
+
+            for (final int id: members) {
+
+                components.join(members[0], id);
+                components.join(base, id);
+            }
+        }
+
+        for (int i = 0; i < builder.touchedSize; i++) {
+
+            components.join(base, builder.touched[i]);
+        }
+
+        final IntTrie.Editor groups = base.edit();
+        for (final int[] members: components.members()) {
+
+            boolean placed = true;
+            for (final int id: members) {
+
+                groups.remove(id);
+                // Waiting items are not assigned in builder
+                placed &= builder.assignments.get(id) != 0;
+            }
+
+            if (placed) {
+
+                for (int i = 0; i < members.length; i++) {
+
+                    groups.put(members[i], members[(i + 1) % members.length] + 1);
+                }
+            } else {
+
+                for (final int id: members) {
+
+                    dropped.add(id);
+                }
+            }
+        }
+
+        return groups.done();
+    }
+
+    /**
+     * Items connected by shared group membership
+     */
+    private static final class Components {
+
+        private final Map<Integer, Integer> parent = new HashMap<Integer, Integer>();
+
+        private int root(final int id) {
+
+            int current = id;
+            Integer next;
+            while ((next = parent.get(current)) != null && next != current) {
+
+                current = next;
+            }
+
+            if (next == null) {
+
+                parent.put(current, current);
+            }
+
+            return current;
+        }
+
+        private void join(final int lhs, final int rhs) {
+
+            final int lhsRoot = root(lhs);
+            final int rhsRoot = root(rhs);
+            if (lhsRoot != rhsRoot) {
+
+                parent.put(rhsRoot, lhsRoot);
+            }
+        }
+
+        /**
+         * Join item with the rest of its group
+         */
+        private void join(final IntTrie groups, final int id) {
+
+            for (int member = groups.get(id) - 1; member != -1 && member != id; member = groups.get(member) - 1) {
+
+                join(id, member);
+            }
+        }
+
+        /**
+         * @return Members of every component, sorted
+         */
+        private Collection<int[]> members() {
+
+            final Map<Integer, List<Integer>> components = new HashMap<Integer, List<Integer>>();
+            for (final int id: parent.keySet()) {
+
+                final int root = root(id);
+                List<Integer> members = components.get(root);
+                if (members == null) {
+
+                    members = new ArrayList<Integer>();
+                    components.put(root, members);
+                }
+
+                members.add(id);
+            }
+
+            final List<int[]> members = new ArrayList<int[]>(components.size());
+            for (final List<Integer> component: components.values()) {
+
+                members.add(sorted(component));
+            }
+
+            return members;
+        }
+    }
+
+    private static int[] sorted(final Collection<Integer> values) {
+
+        final int[] ids = new int[values.size()];
+        int i = 0;
+        for (final int id: values) {
+
+            ids[i++] = id;
+        }
+
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Name node is identified by in assignments
+     */
+    private static String name(final Node node) {
+
+        return node.getSelfLabel().toString();
     }
 
     public String nodeName(final Queue.BuildableItem task) {
@@ -85,7 +736,215 @@ public final class NodeAssignments {
 
     public String nodeName(final int taskId) {
 
-        return assignments.get(taskId);
+        final int node = assignedNode(taskId);
+        return node == NOT_ASSIGNED ? null : names[node];
+    }
+
+    /**
+     * Get handle of node item is assigned to
+     *
+     * @return Node handle or {@link #NOT_ASSIGNED}
+     */
+    public int assignedNode(final int taskId) {
+
+        return assignments.get(taskId) - 1;
+    }
+
+    /**
+     * Position of item in planned order
+     *
+     * @return Rank, lower goes first, or {@link #NOT_RANKED}
+     */
+    public int rank(final int taskId) {
+
+        final int rank = ranks.get(taskId);
+        return rank == 0 ? NOT_RANKED : rank - 1;
+    }
+
+    /**
+     * Plan defines order of items
+     */
+    public boolean isOrdered() {
+
+        return ranks.size() != 0;
+    }
+
+    /**
+     * Item is deliberately left in the queue
+     */
+    public boolean isWaiting(final int taskId) {
+
+        return waiting.get(taskId) != 0;
+    }
+
+    /**
+     * Item is left waiting since its group could not be assigned as a whole
+     */
+    public boolean isGroupIncomplete(final int taskId) {
+
+        return incomplete.get(taskId) != 0;
+    }
+
+    /**
+     * Ids of items left waiting in ascending order
+     *
+     * @return New array. Never null.
+     */
+    public int[] waitingItems() {
+
+        return waiting.keys();
+    }
+
+    /**
+     * Item is assigned, left waiting or ordered
+     */
+    public boolean isPlanned(final int taskId) {
+
+        return assignments.get(taskId) != 0 || waiting.get(taskId) != 0 || ranks.get(taskId) != 0;
+    }
+
+    /**
+     * Ids of items assigned, left waiting or ordered in ascending order
+     *
+     * @return New array. Never null.
+     */
+    public int[] plannedItems() {
+
+        final int[] ids = new int[size() + waiting.size() + ranks.size()];
+        final int[] values = new int[ids.length];
+        assignments.entries(ids, values);
+        System.arraycopy(waiting.keys(), 0, ids, size(), waiting.size());
+        System.arraycopy(ranks.keys(), 0, ids, size() + waiting.size(), ranks.size());
+        Arrays.sort(ids);
+
+        int distinct = 0;
+        for (int i = 0; i < ids.length; i++) {
+
+            if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+
+                ids[distinct++] = ids[i];
+            }
+        }
+
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    /**
+     * Get handle of node
+     *
+     * @return Node handle or {@link #NOT_ASSIGNED} in case there is nothing assigned to the node
+     */
+    public int nodeHandle(final Node node) {
+
+        final Integer cached = handles.resolved.get(node);
+        if (cached != null) return cached;
+
+        // Do not retain nodes that were removed or reconfigured, live ones are resolved again
+        final int generation = nodeGeneration.get();
+        if (handles.generation != generation) {
+
+            handles.generation = generation;
+            handles.resolved.clear();
+        }
+
+        final int handle = nodeHandle(name(node));
+        handles.resolved.put(node, handle);
+        return handle;
+    }
+
+    /**
+     * Nodes were added, removed or reconfigured
+     *
+     * Reconfigured nodes are new instances so handles resolved for the old
+     * ones are dropped.
+     */
+    /*package*/ static void nodesReconfigured() {
+
+        nodeGeneration.incrementAndGet();
+    }
+
+    /**
+     * Node handles resolved since nodes were reconfigured last time
+     */
+    private static final class Handles {
+
+        private final ConcurrentHashMap<Node, Integer> resolved = new ConcurrentHashMap<Node, Integer>();
+
+        private volatile int generation = nodeGeneration.get();
+    }
+
+    /**
+     * Get handle of node by its name
+     *
+     * @return Node handle or {@link #NOT_ASSIGNED} in case there is nothing assigned to the node
+     */
+    public int nodeHandle(final String nodeName) {
+
+        final Integer handle = nameIndex.get(nodeName);
+        return handle == null ? NOT_ASSIGNED : handle;
+    }
+
+    /**
+     * Determine whether item is assigned to node
+     */
+    public boolean isAssigned(final int taskId, final Node node) {
+
+        final int handle = nodeHandle(node);
+
+        // Nothing is planned for the node
+        if (handle == NOT_ASSIGNED || assignedCount(handle) == 0) return false;
+
+        return assignedNode(taskId) == handle;
+    }
+
+    /**
+     * Number of items assigned to node
+     */
+    public int assignedCount(final int nodeHandle) {
+
+        if (nodeHandle == NOT_ASSIGNED) return 0;
+
+        return counts.get(nodeHandle);
+    }
+
+    /**
+     * Number of items assigned to node
+     */
+    public int assignedCount(final String nodeName) {
+
+        return assignedCount(nodeHandle(nodeName));
+    }
+
+    /**
+     * Ids of items assigned to node in ascending order
+     *
+     * @return New array. Never null.
+     */
+    public int[] assignedItems(final int nodeHandle) {
+
+        if (nodeHandle == NOT_ASSIGNED) return new int[0];
+
+        final Index index = index();
+        return Arrays.copyOfRange(index.assignedItems, index.offsets[nodeHandle], index.offsets[nodeHandle + 1]);
+    }
+
+    /**
+     * Ids of items assigned to node in ascending order
+     *
+     * @return New array. Never null.
+     */
+    public int[] assignedItems(final String nodeName) {
+
+        return assignedItems(nodeHandle(nodeName));
+    }
+
+    /**
+     * Number of ints used by node index
+     */
+    /*package*/ int indexFootprint() {
+
+        final Index index = index();
+        return index.assignedItems.length + index.offsets.length;
     }
 
     public int size() {
@@ -104,18 +963,72 @@ public final class NodeAssignments {
 
         final NodeAssignments na = (NodeAssignments) rhs;
 
-        return assignments.equals(na.assignments);
+        if (size() != na.size()) return false;
+
+        if (!equal(waiting, na.waiting) || !equal(incomplete, na.incomplete)) return false;
+
+        final int[] ids = new int[size()];
+        final int[] nodes = new int[ids.length];
+        assignments.entries(ids, nodes);
+        for (int i = 0; i < ids.length; i++) {
+
+            if (!names[nodes[i] - 1].equals(na.nodeName(ids[i]))) return false;
+        }
+
+        return equal(ranks, na.ranks) && equal(groups, na.groups);
+    }
+
+    private static boolean equal(final IntTrie lhs, final IntTrie rhs) {
+
+        if (lhs.size() != rhs.size()) return false;
+
+        final int[] keys = new int[lhs.size()];
+        final int[] values = new int[keys.length];
+        lhs.entries(keys, values);
+        for (int i = 0; i < keys.length; i++) {
+
+            if (rhs.get(keys[i]) != values[i]) return false;
+        }
+
+        return true;
     }
 
     @Override
     public int hashCode() {
 
-        return 31 * assignments.hashCode() + 13;
+        // Same as Map<Integer, String>.hashCode()
+        final int[] ids = new int[size()];
+        final int[] nodes = new int[ids.length];
+        assignments.entries(ids, nodes);
+        int hash = 0;
+        for (int i = 0; i < ids.length; i++) {
+
+            hash += ids[i] ^ names[nodes[i] - 1].hashCode();
+        }
+
+        return 31 * hash + 13;
     }
 
     @Override
     public String toString() {
 
-        return this.getClass().getSimpleName() + ": " + assignments.toString();
+        final StringBuilder builder = new StringBuilder(this.getClass().getSimpleName()).append(": {");
+        final int[] ids = new int[size()];
+        final int[] nodes = new int[ids.length];
+        assignments.entries(ids, nodes);
+        String separator = "";
+        for (int i = 0; i < ids.length; i++) {
+
+            builder.append(separator).append(ids[i]).append('=').append(names[nodes[i] - 1]);
+            separator = ", ";
+        }
+
+        builder.append('}');
+        if (waiting.size() != 0) {
+
+            builder.append(" waiting: ").append(Arrays.toString(waitingItems()));
+        }
+
+        return builder.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Node;
+import hudson.model.queue.CauseOfBlockage;
+
+/**
+ * Reason why external scheduler does not let item run on a node.
+ *
+ * Instances are shared by all items blocked for the same reason on the same
+ * node. Description is formatted when first needed.
+ *
+ * @author ogondza
+ * @see BlockageCauses
+ */
+public final class NotAssignedCause extends CauseOfBlockage {
+
+    public enum Reason {
+
+        NOT_ASSIGNED("External scheduler decided not to assign it to %s"),
+        NOT_PLANNED("External scheduler has not planned it yet so it can not run on %s"),
+        WAITING("External scheduler keeps it waiting so it can not run on %s"),
+        GROUP_INCOMPLETE("External scheduler waits until its whole group can start so it can not run on %s");
+
+        private final String format;
+
+        private Reason(final String format) {
+
+            this.format = format;
+        }
+    }
+
+    private final Reason reason;
+    private final Node node;
+
+    private volatile String description;
+
+    /*package*/ NotAssignedCause(final Reason reason, final Node node) {
+
+        this.reason = reason;
+        this.node = node;
+    }
+
+    public Reason getReason() {
+
+        return reason;
+    }
+
+    public Node getNode() {
+
+        return node;
+    }
+
+    @Override
+    public String getShortDescription() {
+
+        String description = this.description;
+        if (description == null) {
+
+            description = String.format(reason.format, node.getDisplayName());
+            this.description = description;
+        }
+
+        return description;
+    }
+}
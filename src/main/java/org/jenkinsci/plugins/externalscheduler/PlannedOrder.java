@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Queue;
+import hudson.model.Queue.BuildableItem;
+import hudson.model.queue.QueueSorter;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Sort buildable items in order planned by external scheduler.
+ *
+ * Jenkins uses single sorter so this one is installed only while active
+ * scheduler defines order, see {@link Scheduler#isOrdering()}. Items are
+ * sorted by the sorter it replaced first so items without planned order
+ * follow the ranked ones in the order replaced sorter put them in. Replaced
+ * sorter is restored once ordering scheduler is no longer active.
+ *
+ * @author ogondza
+ */
+public class PlannedOrder extends QueueSorter {
+
+    /**
+     * Sorter installed before or null if there was none
+     */
+    private final QueueSorter replaced;
+
+    /*package*/ PlannedOrder(final QueueSorter replaced) {
+
+        this.replaced = replaced;
+    }
+
+    /**
+     * Install planned order while scheduler defines order, restore the replaced sorter otherwise
+     */
+    /*package*/ static void use(final Scheduler scheduler) {
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) return;
+
+        use(jenkins.getQueue(), scheduler.isOrdering());
+    }
+
+    /*package*/ static synchronized void use(final Queue queue, final boolean ordering) {
+
+        final QueueSorter current = queue.getSorter();
+        if (ordering) {
+
+            if (current instanceof PlannedOrder) return;
+
+            queue.setSorter(new PlannedOrder(current == null ? defaultSorter() : current));
+        } else if (current instanceof PlannedOrder) {
+
+            queue.setSorter(((PlannedOrder) current).replaced);
+        }
+    }
+
+    /**
+     * Sorter Jenkins would install in case it was not installed yet
+     */
+    private static QueueSorter defaultSorter() {
+
+        final List<QueueSorter> all = QueueSorter.all();
+        return all == null || all.isEmpty() ? null : all.get(0);
+    }
+
+    @Override
+    public void sortBuildableItems(final List<BuildableItem> items) {
+
+        if (replaced != null) {
+
+            replaced.sortBuildableItems(items);
+        }
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) return;
+
+        final ExternalScheduler plugin = jenkins.getPlugin(ExternalScheduler.class);
+        if (plugin == null || !plugin.isEnabled()) return;
+
+        final NodeAssignments solution = plugin.currentSolution();
+        if (solution == null) return;
+
+        sort(items, solution);
+    }
+
+    /*package*/ QueueSorter replaced() {
+
+        return replaced;
+    }
+
+    /*package*/ static void sort(final List<BuildableItem> items, final NodeAssignments solution) {
+
+        if (!solution.isOrdered()) return;
+
+        // Stable sort keeps unranked items in original order
+        Collections.sort(items, new Comparator<BuildableItem>() {
+
+            public int compare(final BuildableItem lhs, final BuildableItem rhs) {
+
+                final int left = solution.rank(lhs.id);
+                final int right = solution.rank(rhs.id);
+                return left < right ? -1 : (left == right ? 0 : 1);
+            }
+        });
+    }
+}
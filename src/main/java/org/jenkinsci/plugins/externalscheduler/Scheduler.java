@@ -25,6 +25,11 @@ package org.jenkinsci.plugins.externalscheduler;
 
 import hudson.ExtensionPoint;
 import hudson.model.AbstractDescribableImpl;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.List;
+
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
@@ -35,23 +40,158 @@ import org.kohsuke.stapler.StaplerRequest;
  */
 public abstract class Scheduler extends AbstractDescribableImpl<Scheduler> implements ExtensionPoint {
 
-    private static StateProvider stateProvider;
+    private static final StateTracker stateTracker = new StateTracker();
+
+    private static final LabelMatchCache labelMatches = new LabelMatchCache();
+
+    /**
+     * Provider of current Jenkins instance, created when first needed
+     */
+    private static volatile AbstractCiStateProvider stateProvider;
+
+    private static final DurationEstimator durationEstimator = new DurationEstimator();
+
+    private static final AssignmentEvictor assignmentEvictor = new AssignmentEvictor();
 
     /**
      * Get planner solution
      *
+     * Scheduler failing to get solution should throw so the last solution
+     * remains in use while it is recent enough.
+     *
      * @return New assignments or null in case Scheduler can not reliably deliver any solution.
+     * @throws RuntimeException In case solution could not be obtained.
      */
     public abstract NodeAssignments solution();
 
+    /**
+     * Plan whole queue at once
+     *
+     * Called once per scheduling cycle with consistent snapshot of buildable
+     * queue and ready nodes. Returned plan is used to answer all dispatching
+     * decisions until the state changes so expensive optimization is paid once
+     * per cycle. Plan can define order in which Jenkins should consider items
+     * and items that should deliberately stay in the queue.
+     *
+     * Default implementation delegates to {@link #solution()}.
+     *
+     * @param queue Buildable items
+     * @param nodes Nodes ready to take items
+     * @return New assignments or null in case Scheduler can not reliably deliver any solution.
+     */
+    public NodeAssignments solution(final List<Queue.BuildableItem> queue, final List<Node> nodes) {
+
+        return solution();
+    }
+
+    /**
+     * Scheduler defines order Jenkins should consider items in
+     *
+     * Queue is sorted according to planned order only while ordering
+     * scheduler is active so sorters of other plugins are not displaced.
+     */
+    public boolean isOrdering() {
+
+        return false;
+    }
+
+    /**
+     * Items left the queue to be built
+     *
+     * Schedulers keeping solutions between calls should drop the items, see
+     * {@link #assignmentEvictor()}. Default implementation does nothing.
+     */
+    public void itemsLeft(final int... ids) {}
+
+    /**
+     * Plugin is being stopped or the scheduler is being replaced by reconfiguration
+     *
+     * Schedulers keeping state across restarts should persist it. Default
+     * implementation does nothing.
+     */
+    public void stop() {}
+
+    /**
+     * Scheduler leaves all decisions to Jenkins.
+     *
+     * Plugin does not dispatch anything while pass-through scheduler is active.
+     */
+    public boolean isPassThrough() {
+
+        return false;
+    }
+
+    /**
+     * Get provider of Jenkins state shared by all schedulers.
+     *
+     * @throws IllegalStateException In case Jenkins is not running.
+     */
     protected static StateProvider stateProvider() {
 
-        if (stateProvider == null) {
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) throw new IllegalStateException("Jenkins is not running");
+
+        // Racing threads might create equivalent instances, either one will do
+        AbstractCiStateProvider provider = stateProvider;
+        if (provider == null || !provider.isFor(jenkins)) {
+
+            provider = new AbstractCiStateProvider(jenkins);
+            stateProvider = provider;
+        }
+
+        return provider;
+    }
+
+    /**
+     * Nodes changed their state or configuration
+     */
+    /*package*/ static void nodesChanged() {
+
+        // Provider created later reads current nodes anyway
+        final AbstractCiStateProvider provider = stateProvider;
+        if (provider != null) {
 
-            stateProvider = new AbstractCiStateProvider(Jenkins.getInstance());
+            provider.nodesChanged();
         }
 
-        return stateProvider;
+        labelMatches.nodesChanged();
+    }
+
+    /**
+     * Get tracker of state changes shared by all schedulers.
+     *
+     * Call {@link StateTracker#sync(StateProvider)} before asking for changes
+     * to see the current state.
+     */
+    protected static StateTracker stateTracker() {
+
+        return stateTracker;
+    }
+
+    /**
+     * Get cache of nodes matching labels shared by all schedulers.
+     */
+    protected static LabelMatchCache labelMatches() {
+
+        return labelMatches;
+    }
+
+    /**
+     * Get build duration statistics shared by all schedulers.
+     */
+    protected static DurationEstimator durationEstimator() {
+
+        return durationEstimator;
+    }
+
+    /**
+     * Get evictor of items that left the queue shared by all schedulers.
+     *
+     * Diagnostics read its counters.
+     */
+    public static AssignmentEvictor assignmentEvictor() {
+
+        return assignmentEvictor;
     }
 
     public static abstract class Descriptor extends hudson.model.Descriptor<Scheduler> {
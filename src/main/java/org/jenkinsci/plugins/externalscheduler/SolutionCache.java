@@ -0,0 +1,209 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Versioned cache of scheduler solution.
+ *
+ * Jenkins asks {@link Dispatcher} about every (node, item) pair during queue
+ * maintenance so the solution is computed once and reused until queue or node
+ * state changes. Snapshot is also refreshed once it gets older than
+ * {@link #MAX_AGE} to catch changes no listener reports (items leaving quiet
+ * period, for instance).
+ *
+ * Solutions are computed by {@link SolutionRefresher} so readers never wait
+ * for the scheduler. Outdated snapshot is served until the new one is
+ * published unless it is older than maximal staleness permits.
+ *
+ * @author ogondza
+ */
+public final class SolutionCache {
+
+    /**
+     * Maximal age of cached solution in milliseconds
+     */
+    /*package*/ static final long MAX_AGE = Long.getLong(
+            SolutionCache.class.getName() + ".maxAge", 1000
+    );
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<Snapshot>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final SolutionRefresher refresher;
+
+    /*package*/ SolutionCache(final SolutionRefresher refresher) {
+
+        if (refresher == null) throw new IllegalArgumentException("No refresher");
+
+        this.refresher = refresher;
+    }
+
+    /**
+     * Get latest solution of given scheduler, requesting new one when cached one is not valid
+     *
+     * @param state State to compute new solution for
+     * @param maxStaleness Maximal age of outdated solution to serve in milliseconds
+     * @return Cached solution. Null in case scheduler provides no solution or
+     * there is no solution recent enough.
+     */
+    public NodeAssignments solution(
+            final Scheduler scheduler, final StateProvider state, final long maxStaleness
+    ) {
+
+        final long current = version.get();
+        final Snapshot cached = snapshot.get();
+
+        if (cached != null && cached.validFor(scheduler, current)) {
+
+            hits.incrementAndGet();
+            return cached.solution;
+        }
+
+        misses.incrementAndGet();
+        refresher.refresh(scheduler, state, current, this);
+
+        // Refresh might have completed already
+        final Snapshot latest = snapshot.get();
+        if (latest == null || latest.scheduler != scheduler) return null;
+
+        // Fall back to default scheduling
+        if (latest.age() > TimeUnit.MILLISECONDS.toNanos(maxStaleness)) return null;
+
+        return latest.solution;
+    }
+
+    /**
+     * Publish solution scheduler provided on its own
+     *
+     * Solution is considered valid for current state so it is served right
+     * away.
+     *
+     * @return true in case solution differs from the previous one
+     */
+    public boolean publish(final Scheduler scheduler, final NodeAssignments solution) {
+
+        return publish(scheduler, version.get(), solution);
+    }
+
+    /**
+     * Publish solution computed for given state version
+     *
+     * @return true in case solution differs from the previous one
+     */
+    /*package*/ boolean publish(final Scheduler scheduler, final long version, final NodeAssignments solution) {
+
+        final Snapshot previous = snapshot.getAndSet(new Snapshot(scheduler, version, solution));
+
+        if (previous == null) return true;
+
+        return solution == null
+                ? previous.solution != null
+                : !solution.equals(previous.solution)
+        ;
+    }
+
+    /**
+     * Mark cached solution outdated
+     */
+    public void invalidate() {
+
+        version.incrementAndGet();
+    }
+
+    /**
+     * Version of queue and node state. Incremented on every invalidation.
+     */
+    public long version() {
+
+        return version.get();
+    }
+
+    /**
+     * Age of latest published solution in milliseconds
+     *
+     * @return Age or -1 if there is no solution
+     */
+    public long solutionAge() {
+
+        final Snapshot latest = snapshot.get();
+        return latest == null ? -1 : TimeUnit.NANOSECONDS.toMillis(latest.age());
+    }
+
+    public SolutionRefresher refresher() {
+
+        return refresher;
+    }
+
+    /**
+     * Number of solutions served from cache
+     */
+    public long hits() {
+
+        return hits.get();
+    }
+
+    /**
+     * Number of solutions requested from scheduler
+     */
+    public long misses() {
+
+        return misses.get();
+    }
+
+    private static final class Snapshot {
+
+        private final Scheduler scheduler;
+        private final long version;
+        private final long created;
+        private final NodeAssignments solution;
+
+        private Snapshot(final Scheduler scheduler, final long version, final NodeAssignments solution) {
+
+            this.scheduler = scheduler;
+            this.version = version;
+            this.created = System.nanoTime();
+            this.solution = solution;
+        }
+
+        private boolean validFor(final Scheduler scheduler, final long version) {
+
+            if (this.scheduler != scheduler || this.version != version) return false;
+
+            return age() < TimeUnit.MILLISECONDS.toNanos(MAX_AGE);
+        }
+
+        private long age() {
+
+            return System.nanoTime() - created;
+        }
+    }
+}
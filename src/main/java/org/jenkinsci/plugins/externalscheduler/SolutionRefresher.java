@@ -0,0 +1,442 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Compute scheduler solutions outside of queue maintenance.
+ *
+ * At most one refresh is in progress at a time. Requests arriving while
+ * scheduler is computing are dropped as the cache will ask again once it finds
+ * the published solution outdated.
+ *
+ * Scheduler is given {@link #LATENCY_BUDGET} to provide solution. Calls that
+ * run longer are interrupted, or merely counted when there is no separate
+ * thread to make the call on. Scheduler is not called again while its
+ * abandoned call is still running so schedulers need not be prepared for
+ * concurrent calls. Failing and slow calls trip the
+ * {@link CircuitBreaker} so refreshes are not requested until it lets a probe
+ * through. Failed calls publish nothing so the cache serves the last solution
+ * published while it is recent enough and falls back to default Jenkins
+ * scheduling after that.
+ *
+ * @author ogondza
+ */
+public final class SolutionRefresher {
+
+    private final static Logger LOGGER = Logger.getLogger(
+            SolutionRefresher.class.getName()
+    );
+
+    /**
+     * Milliseconds scheduler has to provide solution
+     */
+    /*package*/ static final long LATENCY_BUDGET = Long.getLong(
+            SolutionRefresher.class.getName() + ".latencyBudget", 10000
+    );
+
+    /**
+     * Threads calls hanging past latency budget can hold
+     */
+    /*package*/ static final int CALL_THREADS = Integer.getInteger(
+            SolutionRefresher.class.getName() + ".callThreads", 2
+    );
+
+    private final Executor executor;
+
+    /**
+     * Executes scheduler calls so they can be timed out. Null to call from refreshing thread.
+     */
+    private final ExecutorService calls;
+
+    private final long latencyBudget;
+
+    private final CircuitBreaker breaker;
+
+    private final AtomicBoolean pending = new AtomicBoolean(false);
+
+    /**
+     * Schedulers with call in progress, abandoned ones included
+     */
+    private final Set<Scheduler> calling = Collections.newSetFromMap(new ConcurrentHashMap<Scheduler, Boolean>());
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong lastLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    /*package*/ SolutionRefresher(final Executor executor) {
+
+        this(executor, null, LATENCY_BUDGET, new CircuitBreaker());
+    }
+
+    /**
+     * @param calls Executor to call scheduler on or null to call it from refreshing thread
+     * @param latencyBudget Milliseconds scheduler has to provide solution
+     */
+    /*package*/ SolutionRefresher(
+            final Executor executor, final ExecutorService calls, final long latencyBudget, final CircuitBreaker breaker
+    ) {
+
+        if (executor == null) throw new IllegalArgumentException("No executor");
+        if (breaker == null) throw new IllegalArgumentException("No circuit breaker");
+
+        this.executor = executor;
+        this.calls = calls;
+        this.latencyBudget = latencyBudget;
+        this.breaker = breaker;
+    }
+
+    /**
+     * Create refresher computing solutions on its own daemon thread
+     *
+     * Scheduler calls run on separate threads so hanging scheduler can be
+     * abandoned. Abandoned call keeps its thread until it returns as blocking
+     * I/O does not respond to interruption. At most {@link #CALL_THREADS}
+     * threads are used, calls are rejected and counted as failures while all
+     * of them are held.
+     */
+    /*package*/ static SolutionRefresher background() {
+
+        return new SolutionRefresher(
+                Executors.newSingleThreadExecutor(daemon("External scheduler solution refresher")),
+                calls(CALL_THREADS),
+                LATENCY_BUDGET,
+                new CircuitBreaker()
+        );
+    }
+
+    /**
+     * Pool of at most given number of threads that rejects calls when all of them are busy
+     */
+    /*package*/ static ExecutorService calls(final int threads) {
+
+        final ThreadPoolExecutor calls = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                daemon("External scheduler call")
+        );
+        calls.allowCoreThreadTimeOut(true);
+        return calls;
+    }
+
+    private static ThreadFactory daemon(final String name) {
+
+        return new ThreadFactory() {
+
+            public Thread newThread(final Runnable r) {
+
+                final Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Request new solution to be computed and published to cache
+     *
+     * @return false in case there is refresh in progress already or circuit breaker is open
+     */
+    /*package*/ boolean refresh(
+            final Scheduler scheduler, final StateProvider state, final long version, final SolutionCache cache
+    ) {
+
+        if (!pending.compareAndSet(false, true)) return false;
+
+        if (!breaker.allow()) {
+
+            pending.set(false);
+            return false;
+        }
+
+        try {
+
+            executor.execute(new Runnable() {
+
+                public void run() {
+
+                    try {
+
+                        compute(scheduler, state, version, cache);
+                    } finally {
+
+                        pending.set(false);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException ex) {
+
+            pending.set(false);
+            breaker.failure();
+            return false;
+        }
+
+        return true;
+    }
+
+    private void compute(
+            final Scheduler scheduler, final StateProvider state, final long version, final SolutionCache cache
+    ) {
+
+        final long start = System.nanoTime();
+        final NodeAssignments solution;
+        try {
+
+            solution = call(scheduler, state);
+        } catch (final TimeoutException ex) {
+
+            timeouts.incrementAndGet();
+            failures.incrementAndGet();
+            breaker.failure();
+            LOGGER.log(Level.WARNING, "Scheduler did not provide solution in {0} ms", latencyBudget);
+            return;
+        } catch (final CancellationException ex) {
+
+            // Shutting down
+            return;
+        } catch (final RuntimeException ex) {
+
+            failures.incrementAndGet();
+            breaker.failure();
+            LOGGER.log(Level.WARNING, "Scheduler failed to provide solution", ex);
+            return;
+        } catch (final Error ex) {
+
+            // Half open breaker would never close otherwise
+            failures.incrementAndGet();
+            breaker.failure();
+            throw ex;
+        }
+
+        final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        recordLatency(latency);
+
+        // Solution that could not be abandoned is still good to use
+        if (latency > latencyBudget) {
+
+            timeouts.incrementAndGet();
+            breaker.failure();
+        } else {
+
+            breaker.success();
+        }
+
+        if (cache.publish(scheduler, version, solution)) {
+
+            scheduleMaintenance();
+        }
+    }
+
+    private NodeAssignments call(final Scheduler scheduler, final StateProvider state) throws TimeoutException {
+
+        // Scheduler sees single snapshot of queue and nodes for whole cycle
+        final List<Queue.BuildableItem> queue = state.getQueue();
+        final List<Node> nodes = state.getNodes();
+
+        if (calls == null) return scheduler.solution(queue, nodes);
+
+        if (!calling.add(scheduler)) throw new IllegalStateException(
+                "Abandoned call of " + scheduler + " is still running"
+        );
+
+        final AtomicBoolean started = new AtomicBoolean(false);
+        final Future<NodeAssignments> future;
+        try {
+
+            future = calls.submit(new Callable<NodeAssignments>() {
+
+                public NodeAssignments call() {
+
+                    // Abandoned before it started
+                    if (!started.compareAndSet(false, true)) return null;
+
+                    try {
+
+                        return scheduler.solution(queue, nodes);
+                    } finally {
+
+                        // Next call of the scheduler sees what this one did
+                        calling.remove(scheduler);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException ex) {
+
+            calling.remove(scheduler);
+            throw ex;
+        }
+
+        try {
+
+            return future.get(latencyBudget, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException ex) {
+
+            abandon(future, started, scheduler);
+            throw ex;
+        } catch (final InterruptedException ex) {
+
+            abandon(future, started, scheduler);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted waiting for solution");
+        } catch (final ExecutionException ex) {
+
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Interrupt the call. Call that has not started yet will not start at all.
+     */
+    private void abandon(final Future<?> future, final AtomicBoolean started, final Scheduler scheduler) {
+
+        future.cancel(true);
+        if (started.compareAndSet(false, true)) {
+
+            calling.remove(scheduler);
+        }
+    }
+
+    private void recordLatency(final long latency) {
+
+        refreshes.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        lastLatency.set(latency);
+
+        long max;
+        do {
+
+            max = maxLatency.get();
+        } while (latency > max && !maxLatency.compareAndSet(max, latency));
+    }
+
+    /**
+     * Let Jenkins reconsider queue according to changed solution
+     */
+    private void scheduleMaintenance() {
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) return;
+
+        jenkins.getQueue().scheduleMaintenance();
+    }
+
+    /*package*/ void shutdown() {
+
+        if (executor instanceof ExecutorService) {
+
+            ((ExecutorService) executor).shutdownNow();
+        }
+
+        if (calls != null) {
+
+            calls.shutdownNow();
+        }
+    }
+
+    public CircuitBreaker breaker() {
+
+        return breaker;
+    }
+
+    /**
+     * Number of solutions computed
+     */
+    public long refreshes() {
+
+        return refreshes.get();
+    }
+
+    /**
+     * Number of refreshes that failed
+     */
+    public long failures() {
+
+        return failures.get();
+    }
+
+    /**
+     * Number of refreshes that exceeded latency budget
+     */
+    public long timeouts() {
+
+        return timeouts.get();
+    }
+
+    /**
+     * Duration of last refresh in milliseconds
+     */
+    public long lastLatency() {
+
+        return lastLatency.get();
+    }
+
+    /**
+     * Duration of slowest refresh in milliseconds
+     */
+    public long maxLatency() {
+
+        return maxLatency.get();
+    }
+
+    /**
+     * Average refresh duration in milliseconds
+     */
+    public long averageLatency() {
+
+        final long count = refreshes.get();
+        return count == 0 ? 0 : totalLatency.get() / count;
+    }
+}
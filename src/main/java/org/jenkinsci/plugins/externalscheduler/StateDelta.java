@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes of queue and node state since given version.
+ *
+ * @author ogondza
+ * @see StateTracker
+ */
+public final class StateDelta {
+
+    public enum Kind {
+        ITEM_ADDED, ITEM_REMOVED,
+        NODE_ONLINE, NODE_OFFLINE,
+        NODE_ACCEPTING_TASKS, NODE_NOT_ACCEPTING_TASKS
+    }
+
+    private final long version;
+    private final boolean complete;
+    private final List<Change> changes;
+
+    /*package*/ StateDelta(final long version, final boolean complete, final List<Change> changes) {
+
+        this.version = version;
+        this.complete = complete;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Version to ask for next time
+     */
+    public long version() {
+
+        return version;
+    }
+
+    /**
+     * Delta contains all changes since requested version.
+     *
+     * @return false in case requested version is too old. Consumer needs to
+     * rebuild its state from {@link StateProvider} and continue from {@link #version()}.
+     */
+    public boolean isComplete() {
+
+        return complete;
+    }
+
+    /**
+     * Changes in order they were observed. Empty for incomplete delta.
+     */
+    public List<Change> changes() {
+
+        return changes;
+    }
+
+    /**
+     * Delta contains changes of nodes, not only items
+     */
+    public boolean hasNodeChanges() {
+
+        for (final Change change: changes) {
+
+            if (change.node != null) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("%s %d%s: %s", getClass().getSimpleName(), version, complete ? "" : " incomplete", changes);
+    }
+
+    public static final class Change {
+
+        private final long version;
+        private final Kind kind;
+        private final int item;
+        private final String node;
+
+        /*package*/ static Change item(final long version, final Kind kind, final int item) {
+
+            return new Change(version, kind, item, null);
+        }
+
+        /*package*/ static Change node(final long version, final Kind kind, final String node) {
+
+            return new Change(version, kind, -1, node);
+        }
+
+        private Change(final long version, final Kind kind, final int item, final String node) {
+
+            this.version = version;
+            this.kind = kind;
+            this.item = item;
+            this.node = node;
+        }
+
+        public long version() {
+
+            return version;
+        }
+
+        public Kind kind() {
+
+            return kind;
+        }
+
+        /**
+         * Queue item id. Valid for item changes only.
+         */
+        public int item() {
+
+            return item;
+        }
+
+        /**
+         * Node name. Null for item changes.
+         */
+        public String node() {
+
+            return node;
+        }
+
+        @Override
+        public String toString() {
+
+            return kind + ":" + (node == null ? String.valueOf(item) : node);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.model.queue.WorkUnit;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+
+import java.util.List;
+
+import jenkins.model.Jenkins;
+
+/**
+ * Notify plugin about queue and node state changes
+ *
+ * @author ogondza
+ */
+public final class StateListener {
+
+    private StateListener() {}
+
+    private static void stateChanged() {
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) return;
+
+        final ExternalScheduler plugin = jenkins.getPlugin(ExternalScheduler.class);
+        if (plugin == null) return;
+
+        plugin.stateChanged();
+    }
+
+    private static void itemLeft(final int id) {
+
+        Scheduler.stateTracker().itemLeft(id);
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) return;
+
+        final ExternalScheduler plugin = jenkins.getPlugin(ExternalScheduler.class);
+        if (plugin == null) return;
+
+        plugin.itemLeft(id);
+    }
+
+    private static void nodesChanged() {
+
+        Scheduler.nodesChanged();
+        stateChanged();
+    }
+
+    private static void nodeChanged(final Computer computer) {
+
+        final Node node = computer.getNode();
+        if (node != null) {
+
+            Scheduler.stateTracker().nodeChanged(node);
+        }
+
+        nodesChanged();
+    }
+
+    /**
+     * Nodes going online, offline or being reconfigured
+     */
+    @Extension
+    public static class Computers extends ComputerListener {
+
+        @Override
+        public void onOnline(final Computer c, final TaskListener listener) {
+
+            nodeChanged(c);
+        }
+
+        @Override
+        public void onOffline(final Computer c) {
+
+            nodeChanged(c);
+        }
+
+        @Override
+        public void onTemporarilyOnline(final Computer c) {
+
+            nodeChanged(c);
+        }
+
+        @Override
+        public void onTemporarilyOffline(final Computer c, final OfflineCause cause) {
+
+            nodeChanged(c);
+        }
+
+        @Override
+        public void onConfigurationChange() {
+
+            NodeAssignments.nodesReconfigured();
+            nodesChanged();
+        }
+    }
+
+    /**
+     * Items leaving the queue to be built and builds finishing
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class Runs extends RunListener<Run> {
+
+        public Runs() {
+
+            super(Run.class);
+        }
+
+        @Override
+        public void onStarted(final Run run, final TaskListener listener) {
+
+            // Run starts on executor thread of the item it was built for
+            final Executor executor = Executor.currentExecutor();
+            final WorkUnit unit = executor == null ? null : executor.getCurrentWorkUnit();
+            if (unit == null) {
+
+                stateChanged();
+                return;
+            }
+
+            itemLeft(unit.context.item.id);
+        }
+
+        @Override
+        public void onCompleted(final Run run, final TaskListener listener) {
+
+            Scheduler.durationEstimator().record(DurationEstimator.job(run.getParent()), run.getDuration());
+        }
+    }
+
+    /**
+     * Items entering the queue
+     */
+    @Extension
+    public static class Scheduled extends Queue.QueueDecisionHandler {
+
+        @Override
+        public boolean shouldSchedule(final Queue.Task task, final List<Action> actions) {
+
+            stateChanged();
+            return true;
+        }
+    }
+}
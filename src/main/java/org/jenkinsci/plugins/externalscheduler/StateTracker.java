@@ -0,0 +1,333 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Track queue and node state changes so planners can consume deltas instead of full state.
+ *
+ * Items leaving the queue to be built and node state changes are recorded as
+ * Jenkins reports them. Items entering the queue are found on
+ * {@link #sync(StateProvider)} comparing buildable item ids with queue
+ * snapshot. Observed changes are appended to a bounded log. Consumers
+ * remember {@link StateDelta#version()} and ask for changes since then.
+ *
+ * @author ogondza
+ */
+public final class StateTracker {
+
+    /**
+     * Maximal number of changes retained
+     */
+    /*package*/ static final int MAX_CHANGES = Integer.getInteger(
+            StateTracker.class.getName() + ".maxChanges", 10000
+    );
+
+    /*package*/ enum NodeStatus {
+        READY, NOT_ACCEPTING, OFFLINE
+    }
+
+    private final int capacity;
+
+    private final ArrayDeque<StateDelta.Change> log = new ArrayDeque<StateDelta.Change>();
+
+    private long version = 0;
+
+    private final Set<Integer> items = new HashSet<Integer>();
+
+    private final Map<String, NodeStatus> nodes = new HashMap<String, NodeStatus>();
+
+    /**
+     * Node snapshot of last sync
+     */
+    private List<Node> syncedNodes;
+
+    /**
+     * Nodes seen in previous snapshot that are not ready
+     */
+    private Map<String, Node> knownNodes = new HashMap<String, Node>();
+
+    public StateTracker() {
+
+        this(MAX_CHANGES);
+    }
+
+    /*package*/ StateTracker(final int capacity) {
+
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive");
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * Record changes since last sync
+     *
+     * @return Current version
+     */
+    public long sync(final StateProvider state) {
+
+        return sync(state.getQueue(), state.getNodes());
+    }
+
+    /**
+     * Record changes since last sync
+     *
+     * Items are compared with buildable queue snapshot as Jenkins does not
+     * report items entering or leaving the queue. Nodes are compared only
+     * when provider replaced its node snapshot, node events are recorded as
+     * they arrive.
+     *
+     * @param queue Buildable items
+     * @param readyNodes Nodes ready to take items
+     * @return Current version
+     */
+    public synchronized long sync(final List<Queue.BuildableItem> queue, final List<Node> readyNodes) {
+
+        final Set<Integer> currentItems = new HashSet<Integer>(queue.size() * 2);
+        for (final Queue.BuildableItem item: queue) {
+
+            currentItems.add(item.id);
+        }
+
+        updateItems(currentItems);
+
+        // Provider keeps node snapshot until nodes change
+        if (readyNodes == syncedNodes) return version;
+
+        final Map<String, NodeStatus> currentNodes = new HashMap<String, NodeStatus>();
+        final Map<String, Node> currentKnown = new HashMap<String, Node>();
+        for (final Node node: readyNodes) {
+
+            final String name = node.getSelfLabel().toString();
+            currentNodes.put(name, NodeStatus.READY);
+            currentKnown.put(name, node);
+        }
+
+        // Find out why nodes are not ready any longer
+        for (final Map.Entry<String, Node> known: knownNodes.entrySet()) {
+
+            if (currentNodes.containsKey(known.getKey())) continue;
+
+            final NodeStatus status = status(known.getValue());
+            if (status == NodeStatus.NOT_ACCEPTING) {
+
+                currentNodes.put(known.getKey(), status);
+                currentKnown.put(known.getKey(), known.getValue());
+            }
+        }
+
+        knownNodes = currentKnown;
+        syncedNodes = readyNodes;
+        updateNodes(currentNodes);
+        return version;
+    }
+
+    /**
+     * Item left the queue to be built
+     *
+     * @return Current version
+     */
+    public synchronized long itemLeft(final int id) {
+
+        if (items.remove(id)) {
+
+            append(StateDelta.Change.item(++version, StateDelta.Kind.ITEM_REMOVED, id));
+        }
+
+        return version;
+    }
+
+    /**
+     * Node changed its state
+     *
+     * @return Current version
+     */
+    public synchronized long nodeChanged(final Node node) {
+
+        final String name = node.getSelfLabel().toString();
+        final NodeStatus status = status(node);
+        if (status == NodeStatus.OFFLINE) {
+
+            knownNodes.remove(name);
+        } else {
+
+            knownNodes.put(name, node);
+        }
+
+        transition(name, status);
+        return version;
+    }
+
+    private NodeStatus status(final Node node) {
+
+        final Computer computer = node.toComputer();
+        if (computer == null || computer.isOffline()) return NodeStatus.OFFLINE;
+
+        return computer.isAcceptingTasks() ? NodeStatus.READY : NodeStatus.NOT_ACCEPTING;
+    }
+
+    /**
+     * Record changes between previous and current state
+     *
+     * @param currentItems Ids of buildable items
+     * @param currentNodes Status of nodes. Missing nodes are considered offline.
+     * @return Current version
+     */
+    /*package*/ synchronized long update(
+            final Set<Integer> currentItems, final Map<String, NodeStatus> currentNodes
+    ) {
+
+        updateItems(currentItems);
+        updateNodes(currentNodes);
+        return version;
+    }
+
+    private void updateItems(final Set<Integer> currentItems) {
+
+        final Iterator<Integer> it = items.iterator();
+        while (it.hasNext()) {
+
+            final Integer item = it.next();
+            if (!currentItems.contains(item)) {
+
+                it.remove();
+                append(StateDelta.Change.item(++version, StateDelta.Kind.ITEM_REMOVED, item));
+            }
+        }
+
+        for (final Integer item: currentItems) {
+
+            if (items.add(item)) {
+
+                append(StateDelta.Change.item(++version, StateDelta.Kind.ITEM_ADDED, item));
+            }
+        }
+    }
+
+    private void updateNodes(final Map<String, NodeStatus> currentNodes) {
+
+        for (final String name: new ArrayList<String>(nodes.keySet())) {
+
+            if (!currentNodes.containsKey(name)) {
+
+                transition(name, NodeStatus.OFFLINE);
+            }
+        }
+
+        for (final Map.Entry<String, NodeStatus> current: currentNodes.entrySet()) {
+
+            transition(current.getKey(), current.getValue());
+        }
+    }
+
+    private void transition(final String name, final NodeStatus status) {
+
+        final NodeStatus previous = status == NodeStatus.OFFLINE
+                ? nodes.remove(name)
+                : nodes.put(name, status)
+        ;
+
+        if (previous == status) return;
+
+        if (status == NodeStatus.OFFLINE) {
+
+            append(StateDelta.Change.node(++version, StateDelta.Kind.NODE_OFFLINE, name));
+            return;
+        }
+
+        if (previous == null) {
+
+            append(StateDelta.Change.node(++version, StateDelta.Kind.NODE_ONLINE, name));
+            if (status == NodeStatus.READY) return;
+        }
+
+        append(StateDelta.Change.node(++version, status == NodeStatus.READY
+                ? StateDelta.Kind.NODE_ACCEPTING_TASKS
+                : StateDelta.Kind.NODE_NOT_ACCEPTING_TASKS
+                , name
+        ));
+    }
+
+    private void append(final StateDelta.Change change) {
+
+        log.addLast(change);
+        if (log.size() > capacity) {
+
+            log.removeFirst();
+        }
+    }
+
+    /**
+     * Get changes since given version
+     *
+     * @param since Version consumer has seen. 0 to get all changes.
+     */
+    public synchronized StateDelta changesSince(final long since) {
+
+        // Consumer has seen changes of different tracker
+        if (since > version) return incomplete();
+
+        final long oldest = log.isEmpty() ? version + 1 : log.peekFirst().version();
+        if (since + 1 < oldest) return incomplete();
+
+        final List<StateDelta.Change> changes = new ArrayList<StateDelta.Change>();
+        final Iterator<StateDelta.Change> it = log.descendingIterator();
+        while (it.hasNext()) {
+
+            final StateDelta.Change change = it.next();
+            if (change.version() <= since) break;
+
+            changes.add(change);
+        }
+
+        Collections.reverse(changes);
+        return new StateDelta(version, true, changes);
+    }
+
+    private StateDelta incomplete() {
+
+        return new StateDelta(version, false, Collections.<StateDelta.Change>emptyList());
+    }
+
+    /**
+     * Latest version
+     */
+    public synchronized long version() {
+
+        return version;
+    }
+}
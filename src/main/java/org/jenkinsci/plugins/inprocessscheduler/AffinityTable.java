@@ -0,0 +1,290 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import hudson.XmlFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Nodes jobs were recently built on.
+ *
+ * Holds up to {@link #MAX_JOBS} most recently built or planned jobs and up to
+ * {@link #NODES_PER_JOB} most recent nodes for every job. Node a job was built
+ * on recently is likely to have its workspace and caches warm.
+ *
+ * Table is persisted to a file at most once in {@link #SAVE_INTERVAL}
+ * milliseconds and once more when Jenkins stops.
+ *
+ * @author ogondza
+ */
+public final class AffinityTable {
+
+    private final static Logger LOGGER = Logger.getLogger(
+            AffinityTable.class.getName()
+    );
+
+    /*package*/ static final int MAX_JOBS = Integer.getInteger(
+            AffinityTable.class.getName() + ".maxJobs", 10000
+    );
+
+    /*package*/ static final int NODES_PER_JOB = Integer.getInteger(
+            AffinityTable.class.getName() + ".nodesPerJob", 3
+    );
+
+    /*package*/ static final long SAVE_INTERVAL = Long.getLong(
+            AffinityTable.class.getName() + ".saveInterval", 60000
+    );
+
+    private final int nodesPerJob;
+
+    /**
+     * Job full name to node names, most recent first. Guarded by this.
+     */
+    private final LinkedHashMap<String, String[]> recent;
+
+    private final XmlFile file;
+    private boolean dirty = false;
+    private long saved = 0;
+
+    private final AtomicLong warmBuilds = new AtomicLong();
+    private final AtomicLong coldBuilds = new AtomicLong();
+    private final AtomicLong plannedWarm = new AtomicLong();
+    private final AtomicLong plannedCold = new AtomicLong();
+
+    /*package*/ AffinityTable(final int maxJobs, final int nodesPerJob, final XmlFile file) {
+
+        if (maxJobs <= 0) throw new IllegalArgumentException("Table must hold at least one job");
+        if (nodesPerJob <= 0) throw new IllegalArgumentException("Table must hold at least one node per job");
+
+        this.nodesPerJob = nodesPerJob;
+        this.file = file;
+        this.recent = new LinkedHashMap<String, String[]>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, String[]> eldest) {
+
+                return size() > maxJobs;
+            }
+        };
+    }
+
+    /**
+     * Create table and read its content from file
+     */
+    /*package*/ static AffinityTable load(final XmlFile file) {
+
+        final AffinityTable table = new AffinityTable(MAX_JOBS, NODES_PER_JOB, file);
+        if (file == null || !file.exists()) return table;
+
+        try {
+
+            @SuppressWarnings("unchecked")
+            final Map<String, List<String>> persisted = (Map<String, List<String>>) file.read();
+            table.restore(persisted);
+        } catch (final IOException ex) {
+
+            LOGGER.log(Level.WARNING, "Unable to read node affinity from " + file, ex);
+        }
+
+        return table;
+    }
+
+    /**
+     * Nodes job was recently built on
+     *
+     * @return Node names, most recent first. Never null.
+     */
+    public synchronized List<String> recentNodes(final String job) {
+
+        final String[] nodes = recent.get(job);
+        return nodes == null
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(Arrays.asList(nodes))
+        ;
+    }
+
+    /**
+     * Record job was built on node
+     */
+    public void built(final String job, final String node) {
+
+        final boolean warm;
+        synchronized (this) {
+
+            final String[] nodes = recent.get(job);
+            warm = nodes != null && Arrays.asList(nodes).contains(node);
+            recent.put(job, mostRecent(nodes, node));
+            dirty = true;
+        }
+
+        (warm ? warmBuilds : coldBuilds).incrementAndGet();
+    }
+
+    private String[] mostRecent(final String[] nodes, final String node) {
+
+        if (nodes == null) return new String[] {node};
+
+        final List<String> updated = new ArrayList<String>(nodes.length + 1);
+        updated.add(node);
+        for (final String previous: nodes) {
+
+            if (updated.size() == nodesPerJob) break;
+
+            if (!previous.equals(node)) {
+
+                updated.add(previous);
+            }
+        }
+
+        return updated.toArray(new String[updated.size()]);
+    }
+
+    /**
+     * Record item was planned on warm or cold node
+     */
+    /*package*/ void planned(final boolean warm) {
+
+        (warm ? plannedWarm : plannedCold).incrementAndGet();
+    }
+
+    /**
+     * Save table in case it changed and was not saved recently
+     */
+    /*package*/ void saveIfDue(final long now) {
+
+        save(now, SAVE_INTERVAL);
+    }
+
+    /**
+     * Save table in case it changed since last save
+     */
+    /*package*/ void save() {
+
+        save(System.currentTimeMillis(), 0);
+    }
+
+    private void save(final long now, final long interval) {
+
+        final Map<String, List<String>> snapshot;
+        synchronized (this) {
+
+            if (file == null || !dirty || now - saved < interval) return;
+
+            snapshot = snapshot();
+            dirty = false;
+            saved = now;
+        }
+
+        try {
+
+            file.write(snapshot);
+        } catch (final IOException ex) {
+
+            LOGGER.log(Level.WARNING, "Unable to save node affinity to " + file, ex);
+        }
+    }
+
+    /**
+     * Jobs and their nodes, least recently built or planned first
+     */
+    /*package*/ synchronized LinkedHashMap<String, List<String>> snapshot() {
+
+        final LinkedHashMap<String, List<String>> snapshot = new LinkedHashMap<String, List<String>>();
+        for (final Map.Entry<String, String[]> entry: recent.entrySet()) {
+
+            snapshot.put(entry.getKey(), new ArrayList<String>(Arrays.asList(entry.getValue())));
+        }
+
+        return snapshot;
+    }
+
+    /*package*/ synchronized void restore(final Map<String, List<String>> persisted) {
+
+        for (final Map.Entry<String, List<String>> entry: persisted.entrySet()) {
+
+            final List<String> nodes = entry.getValue();
+            recent.put(entry.getKey(), nodes.subList(0, Math.min(nodes.size(), nodesPerJob)).toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Number of jobs tracked
+     */
+    public synchronized int size() {
+
+        return recent.size();
+    }
+
+    /**
+     * Builds that run on node job was recently built on
+     */
+    public long warmBuilds() {
+
+        return warmBuilds.get();
+    }
+
+    /**
+     * Builds that run on node job was not built on recently
+     */
+    public long coldBuilds() {
+
+        return coldBuilds.get();
+    }
+
+    /**
+     * Fraction of builds that run on warm node
+     */
+    public double hitRate() {
+
+        final long warm = warmBuilds.get();
+        final long total = warm + coldBuilds.get();
+        return total == 0 ? 0 : (double) warm / total;
+    }
+
+    /**
+     * Items planned on node their job was recently built on
+     */
+    public long plannedWarm() {
+
+        return plannedWarm.get();
+    }
+
+    /**
+     * Items with build history planned on other node
+     */
+    public long plannedCold() {
+
+        return plannedCold.get();
+    }
+}
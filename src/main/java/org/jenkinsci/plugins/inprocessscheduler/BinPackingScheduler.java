@@ -0,0 +1,293 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.plugins.externalscheduler.LabelMatchCache;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.Scheduler;
+import org.jenkinsci.plugins.externalscheduler.StateProvider;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Assign items to least loaded nodes that can take them.
+ *
+ * Items are placed greedily in queue order or the order defined by
+ * {@link #order(List)}. Every item goes to the node with free executor where
+ * it is expected to finish first considering the load already planned for the
+ * node. Items that do not fit stay in the queue. Items can prefer some nodes,
+ * see {@link #preferredNodes(Queue.BuildableItem)}.
+ *
+ * Node state is kept in primitive arrays indexed by node position. Nodes that
+ * can take items with the same label are taken from shared
+ * {@link LabelMatchCache} once per plan and nodes with no free executor are
+ * dropped from candidates as soon as they fill up.
+ *
+ * @author ogondza
+ */
+public class BinPackingScheduler extends Scheduler {
+
+    private transient Weights weights;
+
+    @DataBoundConstructor
+    public BinPackingScheduler() {
+
+        this(new EstimatedDurationWeights(durationEstimator()));
+    }
+
+    public BinPackingScheduler(final Weights weights) {
+
+        if (weights == null) throw new IllegalArgumentException("No weights");
+
+        this.weights = weights;
+    }
+
+    protected Object readResolve() {
+
+        weights = new EstimatedDurationWeights(durationEstimator());
+        return this;
+    }
+
+    protected final Weights weights() {
+
+        return weights;
+    }
+
+    @Override
+    public NodeAssignments solution() {
+
+        final StateProvider state = stateProvider();
+        return solution(state.getQueue(), state.getNodes());
+    }
+
+    @Override
+    public NodeAssignments solution(final List<Queue.BuildableItem> queue, final List<Node> nodes) {
+
+        final int size = nodes.size();
+        final int[] free = new int[size];
+        final double[] speed = new double[size];
+        final double[] load = new double[size];
+
+        int capacity = 0;
+        for (int i = 0; i < size; i++) {
+
+            final Node node = nodes.get(i);
+            free[i] = freeExecutors(node);
+            speed[i] = weights.speed(node);
+            capacity += free[i];
+        }
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        final List<Queue.BuildableItem> ordered = order(queue);
+        if (ordered != queue) {
+
+            for (final Queue.BuildableItem item: ordered) {
+
+                builder.order(item.id);
+            }
+        }
+
+        final Map<Label, Candidates> candidates = new IdentityHashMap<Label, Candidates>();
+        Map<String, Integer> nodeIndex = null;
+        for (final Queue.BuildableItem item: ordered) {
+
+            // All executors planned
+            if (capacity == 0) break;
+
+            final Label label = item.getAssignedLabel();
+            Candidates matching = candidates.get(label);
+            if (matching == null) {
+
+                matching = new Candidates(labelMatches().matching(label, nodes));
+                candidates.put(label, matching);
+            }
+
+            final double cost = weights.cost(item);
+            int node = matching.leastLoaded(free, load, speed, cost);
+            if (node == NodeAssignments.NOT_ASSIGNED) continue;
+
+            double nodeCost = cost;
+            final Collection<String> preferred = preferredNodes(item);
+            if (!preferred.isEmpty()) {
+
+                if (nodeIndex == null) {
+
+                    nodeIndex = index(nodes);
+                }
+
+                final double preferredCost = preferredCost(cost);
+                double bestFinish = load[node] + cost / speed[node];
+                for (final String name: preferred) {
+
+                    final Integer candidate = nodeIndex.get(name);
+                    if (candidate == null || free[candidate] == 0 || !matching.contains(candidate)) continue;
+
+                    final double finish = load[candidate] + preferredCost / speed[candidate];
+                    if (finish < bestFinish) {
+
+                        bestFinish = finish;
+                        node = candidate;
+                        nodeCost = preferredCost;
+                    }
+                }
+            }
+
+            free[node]--;
+            load[node] += nodeCost / speed[node];
+            capacity--;
+            builder.assign(item, nodes.get(node));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Order items should be placed and considered by Jenkins in
+     *
+     * @return Queue itself to keep queue order or reordered copy.
+     */
+    protected List<Queue.BuildableItem> order(final List<Queue.BuildableItem> queue) {
+
+        return queue;
+    }
+
+    /**
+     * Names of nodes item should preferably run on
+     *
+     * Item goes to preferred node unless other node is expected to finish it
+     * sooner even though the item costs less on preferred node.
+     *
+     * @see #preferredCost(double)
+     */
+    protected Collection<String> preferredNodes(final Queue.BuildableItem item) {
+
+        return Collections.emptyList();
+    }
+
+    /**
+     * Cost of item running on one of its preferred nodes
+     */
+    protected double preferredCost(final double cost) {
+
+        return cost;
+    }
+
+    /**
+     * Number of executors available to planned items
+     */
+    protected int freeExecutors(final Node node) {
+
+        final Computer computer = node.toComputer();
+        return computer == null ? 0 : computer.countIdle();
+    }
+
+    private static Map<String, Integer> index(final List<Node> nodes) {
+
+        final Map<String, Integer> index = new HashMap<String, Integer>(nodes.size() * 2);
+        for (int i = 0; i < nodes.size(); i++) {
+
+            index.put(nodes.get(i).getSelfLabel().toString(), i);
+        }
+
+        return index;
+    }
+
+    /**
+     * Indices of nodes that can take items with given label
+     */
+    private static final class Candidates {
+
+        private final BitSet matching;
+        private final int[] nodes;
+        private int size;
+
+        private Candidates(final BitSet matching) {
+
+            this.matching = matching;
+            this.nodes = new int[matching.cardinality()];
+            for (int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1)) {
+
+                this.nodes[size++] = i;
+            }
+        }
+
+        private boolean contains(final int node) {
+
+            return matching.get(node);
+        }
+
+        /**
+         * Node where item finishes first
+         *
+         * @return Node index or {@link NodeAssignments#NOT_ASSIGNED}
+         */
+        private int leastLoaded(final int[] free, final double[] load, final double[] speed, final double cost) {
+
+            int best = NodeAssignments.NOT_ASSIGNED;
+            double bestFinish = Double.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+
+                final int node = nodes[i];
+                if (free[node] == 0) {
+
+                    // Full nodes will not be considered again
+                    nodes[i--] = nodes[--size];
+                    continue;
+                }
+
+                final double finish = load[node] + cost / speed[node];
+                if (finish < bestFinish) {
+
+                    bestFinish = finish;
+                    best = node;
+                }
+            }
+
+            return best;
+        }
+    }
+
+    @Extension
+    public static class Descriptor extends Scheduler.Descriptor {
+
+        @Override
+        public String getDisplayName() {
+
+            return "Assign builds to least loaded nodes";
+        }
+    }
+}
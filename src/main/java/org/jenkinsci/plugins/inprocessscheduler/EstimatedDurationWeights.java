@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import org.jenkinsci.plugins.externalscheduler.DurationEstimator;
+
+/**
+ * Weigh items by their expected duration.
+ *
+ * Recent build durations are used when known, Jenkins estimate otherwise. All
+ * nodes are considered equally fast.
+ *
+ * @author ogondza
+ */
+public class EstimatedDurationWeights implements Weights {
+
+    /**
+     * Cost of items with no duration estimate in milliseconds
+     */
+    /*package*/ static final long DEFAULT_COST = 60000;
+
+    private final DurationEstimator estimator;
+
+    public EstimatedDurationWeights(final DurationEstimator estimator) {
+
+        if (estimator == null) throw new IllegalArgumentException("No estimator");
+
+        this.estimator = estimator;
+    }
+
+    public double speed(final Node node) {
+
+        return 1;
+    }
+
+    public double cost(final Queue.BuildableItem item) {
+
+        final long estimate = estimator.estimate(item);
+        return estimate > 0 ? estimate : DEFAULT_COST;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.util.FormValidation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.WeakHashMap;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.externalscheduler.DurationEstimator;
+import org.jenkinsci.plugins.externalscheduler.ExternalScheduler;
+import org.jenkinsci.plugins.externalscheduler.Scheduler;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+
+/**
+ * Share executors between teams according to their weights.
+ *
+ * Team is the folder item belongs to. Items are ordered by weighted virtual
+ * time: team that consumed least executor time relative to its share goes
+ * next and its virtual time advances by item cost divided by share. Items are
+ * then placed onto nodes in that order.
+ *
+ * Executor time teams consumed recently is taken into account so a team that
+ * has just finished a burst does not take precedence over the others. Builds
+ * are charged their expected duration when they start and corrected by actual
+ * duration once completed so running work counts as well. Every decision costs
+ * <tt>O(log teams)</tt>.
+ *
+ * Jenkins has no notion of item priority so teams are the only criterion.
+ *
+ * @author ogondza
+ * @see UsageLedger
+ */
+public class FairShareScheduler extends BinPackingScheduler {
+
+    private static final UsageLedger LEDGER = new UsageLedger(UsageLedger.HALF_LIFE);
+
+    /**
+     * Share of teams not listed
+     */
+    /*package*/ static final double DEFAULT_SHARE = 1;
+
+    /**
+     * Lines of <tt>team=share</tt>
+     */
+    private final String shares;
+
+    private transient Map<String, Double> teamShares;
+    private transient UsageLedger ledger;
+
+    @DataBoundConstructor
+    public FairShareScheduler(final String shares) {
+
+        this(shares, new EstimatedDurationWeights(durationEstimator()), LEDGER);
+    }
+
+    /*package*/ FairShareScheduler(final String shares, final Weights weights, final UsageLedger ledger) {
+
+        super(weights);
+
+        this.shares = shares == null ? "" : shares;
+        this.teamShares = parse(this.shares);
+        this.ledger = ledger;
+    }
+
+    @Override
+    protected Object readResolve() {
+
+        super.readResolve();
+        teamShares = parse(shares);
+        ledger = LEDGER;
+        return this;
+    }
+
+    /**
+     * Executor time consumed by teams
+     */
+    public static UsageLedger ledger() {
+
+        return LEDGER;
+    }
+
+    public String getShares() {
+
+        return shares;
+    }
+
+    private static Map<String, Double> parse(final String shares) {
+
+        final Map<String, Double> parsed = new HashMap<String, Double>();
+        for (final String line: shares.split("\n")) {
+
+            if (line.trim().isEmpty()) continue;
+
+            final int separator = line.lastIndexOf('=');
+            if (separator < 0) throw new IllegalArgumentException("Invalid team share: " + line);
+
+            final double share;
+            try {
+
+                share = Double.parseDouble(line.substring(separator + 1).trim());
+            } catch (final NumberFormatException ex) {
+
+                throw new IllegalArgumentException("Invalid team share: " + line, ex);
+            }
+
+            if (!(share > 0)) throw new IllegalArgumentException("Team share must be positive: " + line);
+
+            parsed.put(line.substring(0, separator).trim(), share);
+        }
+
+        return Collections.unmodifiableMap(parsed);
+    }
+
+    @Override
+    public boolean isOrdering() {
+
+        return true;
+    }
+
+    @Override
+    protected List<Queue.BuildableItem> order(final List<Queue.BuildableItem> queue) {
+
+        final Map<String, Team> teams = new LinkedHashMap<String, Team>();
+        for (final Queue.BuildableItem item: queue) {
+
+            final String name = team(item.task);
+            Team team = teams.get(name);
+            if (team == null) {
+
+                team = new Team(name, share(name), ledger.usage(name));
+                teams.put(name, team);
+            }
+
+            team.items.add(item);
+        }
+
+        final PriorityQueue<Team> next = new PriorityQueue<Team>(teams.values());
+        final List<Queue.BuildableItem> ordered = new ArrayList<Queue.BuildableItem>(queue.size());
+        while (!next.isEmpty()) {
+
+            final Team team = next.poll();
+            final Queue.BuildableItem item = team.items.poll();
+            ordered.add(item);
+
+            // Costs are in milliseconds
+            team.virtualTime += weights().cost(item) / 1000 / team.share;
+            if (!team.items.isEmpty()) {
+
+                next.add(team);
+            }
+        }
+
+        return ordered;
+    }
+
+    private double share(final String team) {
+
+        final Double share = teamShares.get(team);
+        return share == null ? DEFAULT_SHARE : share;
+    }
+
+    /**
+     * Full name of folder item belongs to. Empty for top level items.
+     */
+    /*package*/ static String team(final Object task) {
+
+        if (!(task instanceof Item)) return "";
+
+        final ItemGroup<?> parent = ((Item) task).getParent();
+        return parent == null ? "" : parent.getFullName();
+    }
+
+    private static final class Team implements Comparable<Team> {
+
+        private final String name;
+        private final double share;
+        private final ArrayDeque<Queue.BuildableItem> items = new ArrayDeque<Queue.BuildableItem>();
+        private double virtualTime;
+
+        private Team(final String name, final double share, final double usage) {
+
+            this.name = name;
+            this.share = share;
+            this.virtualTime = usage / share;
+        }
+
+        public int compareTo(final Team other) {
+
+            if (virtualTime != other.virtualTime) {
+
+                return virtualTime < other.virtualTime ? -1 : 1;
+            }
+
+            return name.compareTo(other.name);
+        }
+    }
+
+    /**
+     * Record executor time consumed by builds while the scheduler is active
+     *
+     * Builds charged on start are corrected on completion even if the
+     * scheduler was replaced meanwhile.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class Accounting extends RunListener<Run> {
+
+        /**
+         * Executor seconds charged to running builds
+         */
+        private final Map<Run, Double> charged = Collections.synchronizedMap(new WeakHashMap<Run, Double>());
+
+        public Accounting() {
+
+            super(Run.class);
+        }
+
+        @Override
+        public void onStarted(final Run run, final TaskListener listener) {
+
+            if (!active()) return;
+
+            final long expected = durationEstimator().average(DurationEstimator.job(run.getParent()));
+            if (expected <= 0) return;
+
+            charged.put(run, expected / 1000D);
+            LEDGER.record(team(run.getParent()), expected / 1000D);
+        }
+
+        @Override
+        public void onCompleted(final Run run, final TaskListener listener) {
+
+            final Double expected = charged.remove(run);
+            if (expected == null && !active()) return;
+
+            final double consumed = run.getDuration() / 1000D;
+            LEDGER.record(team(run.getParent()), expected == null ? consumed : consumed - expected);
+        }
+
+        private boolean active() {
+
+            final Jenkins jenkins = Jenkins.getInstance();
+            final ExternalScheduler plugin = jenkins == null ? null : jenkins.getPlugin(ExternalScheduler.class);
+            return plugin != null && plugin.activeScheduler() instanceof FairShareScheduler;
+        }
+    }
+
+    @Extension
+    public static class Descriptor extends Scheduler.Descriptor {
+
+        @Override
+        public String getDisplayName() {
+
+            return "Share executors fairly between folders";
+        }
+
+        @Override
+        public Scheduler newInstance(final StaplerRequest req, final JSONObject formData) throws FormException {
+
+            final String error = check(formData.optString("shares"));
+            if (error != null) throw new FormException(error, "shares");
+
+            return super.newInstance(req, formData);
+        }
+
+        public FormValidation doCheckShares(@QueryParameter final String value) {
+
+            final String error = check(value);
+            return error == null ? FormValidation.ok() : FormValidation.error(error);
+        }
+
+        /**
+         * @return Problem with shares or null if valid.
+         */
+        /*package*/ static String check(final String shares) {
+
+            try {
+
+                parse(shares == null ? "" : shares);
+                return null;
+            } catch (final IllegalArgumentException ex) {
+
+                return ex.getMessage();
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jenkins.model.Jenkins;
+
+import org.jenkinsci.plugins.externalscheduler.DurationEstimator;
+import org.jenkinsci.plugins.externalscheduler.ExternalScheduler;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.Scheduler;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Place items on nodes their job was recently built on.
+ *
+ * Item running on such node is considered {@link #WARM_COST} times cheaper as
+ * it does not need to populate the workspace and caches. Item still goes to
+ * other node when its warm nodes are full or loaded so much that it would
+ * finish sooner elsewhere.
+ *
+ * @author ogondza
+ * @see AffinityTable
+ */
+public class LocalityScheduler extends BinPackingScheduler {
+
+    /**
+     * Cost of item on warm node relative to cold one
+     */
+    /*package*/ static final double WARM_COST = Double.parseDouble(
+            System.getProperty(LocalityScheduler.class.getName() + ".warmCost", "0.5")
+    );
+
+    /**
+     * Table shared by all locality schedulers, loaded when first needed
+     */
+    private static volatile AffinityTable shared;
+
+    private transient AffinityTable affinity;
+
+    /**
+     * Ids of queued items planned on node before
+     */
+    private transient volatile Set<Integer> counted = Collections.emptySet();
+
+    @DataBoundConstructor
+    public LocalityScheduler() {
+
+        this(new EstimatedDurationWeights(durationEstimator()), null);
+    }
+
+    /*package*/ LocalityScheduler(final Weights weights, final AffinityTable affinity) {
+
+        super(weights);
+        this.affinity = affinity;
+    }
+
+    @Override
+    protected Object readResolve() {
+
+        super.readResolve();
+        affinity = null;
+        counted = Collections.emptySet();
+        return this;
+    }
+
+    /**
+     * Nodes jobs were recently built on shared by all locality schedulers
+     *
+     * Table is not persisted unless Jenkins is running. Such table is not
+     * retained so the persisted one is loaded once Jenkins runs.
+     */
+    public static AffinityTable affinity() {
+
+        final AffinityTable table = shared;
+        return table == null ? load() : table;
+    }
+
+    private static synchronized AffinityTable load() {
+
+        if (shared != null) return shared;
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) return AffinityTable.load(null);
+
+        shared = AffinityTable.load(new XmlFile(new File(
+                jenkins.getRootDir(), AffinityTable.class.getName() + ".xml"
+        )));
+        return shared;
+    }
+
+    private AffinityTable table() {
+
+        return affinity == null ? affinity() : affinity;
+    }
+
+    @Override
+    public NodeAssignments solution(final List<Queue.BuildableItem> queue, final List<Node> nodes) {
+
+        final NodeAssignments solution = super.solution(queue, nodes);
+
+        // Count items once no matter how many times they are planned
+        final AffinityTable table = table();
+        final Set<Integer> previous = counted;
+        final Set<Integer> planned = new HashSet<Integer>();
+        for (final Queue.BuildableItem item: queue) {
+
+            if (previous.contains(item.id)) {
+
+                planned.add(item.id);
+                continue;
+            }
+
+            final String node = solution.nodeName(item.id);
+            if (node == null) continue;
+
+            planned.add(item.id);
+            final List<String> recent = table.recentNodes(DurationEstimator.job(item.task));
+            if (!recent.isEmpty()) {
+
+                table.planned(recent.contains(node));
+            }
+        }
+
+        counted = planned;
+        return solution;
+    }
+
+    @Override
+    public void stop() {
+
+        table().save();
+    }
+
+    @Override
+    protected Collection<String> preferredNodes(final Queue.BuildableItem item) {
+
+        return table().recentNodes(DurationEstimator.job(item.task));
+    }
+
+    @Override
+    protected double preferredCost(final double cost) {
+
+        return cost * WARM_COST;
+    }
+
+    /**
+     * Record nodes finished builds run on while locality scheduler is active
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class Builds extends RunListener<Run> {
+
+        public Builds() {
+
+            super(Run.class);
+        }
+
+        @Override
+        public void onCompleted(final Run run, final TaskListener listener) {
+
+            if (!(run instanceof AbstractBuild) || !active()) return;
+
+            final Node node = ((AbstractBuild) run).getBuiltOn();
+            if (node == null) return;
+
+            final AffinityTable table = affinity();
+            table.built(DurationEstimator.job(run.getParent()), node.getSelfLabel().toString());
+            table.saveIfDue(System.currentTimeMillis());
+        }
+
+        private boolean active() {
+
+            final Jenkins jenkins = Jenkins.getInstance();
+            final ExternalScheduler plugin = jenkins == null ? null : jenkins.getPlugin(ExternalScheduler.class);
+            return plugin != null && plugin.activeScheduler() instanceof LocalityScheduler;
+        }
+    }
+
+    @Extension
+    public static class Descriptor extends Scheduler.Descriptor {
+
+        @Override
+        public String getDisplayName() {
+
+            return "Prefer nodes with warm workspace";
+        }
+    }
+}
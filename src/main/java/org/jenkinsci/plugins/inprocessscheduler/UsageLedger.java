@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor time consumed by teams.
+ *
+ * Usage decays exponentially so past bursts are forgiven over time. Usage is
+ * halved every {@link #HALF_LIFE} milliseconds.
+ *
+ * @author ogondza
+ */
+public final class UsageLedger {
+
+    /*package*/ static final long HALF_LIFE = Long.getLong(
+            UsageLedger.class.getName() + ".halfLife", TimeUnit.HOURS.toMillis(1)
+    );
+
+    private final long halfLife;
+
+    private final ConcurrentHashMap<String, Usage> teams = new ConcurrentHashMap<String, Usage>();
+
+    /*package*/ UsageLedger(final long halfLife) {
+
+        if (halfLife <= 0) throw new IllegalArgumentException("Half-life must be positive: " + halfLife);
+
+        this.halfLife = halfLife;
+    }
+
+    /**
+     * Record executor time consumed by team
+     */
+    public void record(final String team, final double executorSeconds) {
+
+        record(team, executorSeconds, System.currentTimeMillis());
+    }
+
+    /*package*/ void record(final String team, final double executorSeconds, final long now) {
+
+        Usage usage = teams.get(team);
+        if (usage == null) {
+
+            final Usage created = new Usage(now);
+            usage = teams.putIfAbsent(team, created);
+            if (usage == null) {
+
+                usage = created;
+            }
+        }
+
+        usage.add(executorSeconds, now, halfLife);
+    }
+
+    /**
+     * Executor seconds consumed by team, decayed
+     */
+    public double usage(final String team) {
+
+        return usage(team, System.currentTimeMillis());
+    }
+
+    /*package*/ double usage(final String team, final long now) {
+
+        final Usage usage = teams.get(team);
+        return usage == null ? 0 : usage.value(now, halfLife);
+    }
+
+    private static final class Usage {
+
+        private double value = 0;
+        private long updated;
+
+        private Usage(final long now) {
+
+            this.updated = now;
+        }
+
+        private synchronized void add(final double amount, final long now, final long halfLife) {
+
+            // Corrections of overestimated builds might exceed what is left after decay
+            value = Math.max(0, value(now, halfLife) + amount);
+            updated = Math.max(updated, now);
+        }
+
+        private synchronized double value(final long now, final long halfLife) {
+
+            final long elapsed = now - updated;
+            if (elapsed <= 0) return value;
+
+            return value * Math.pow(0.5, (double) elapsed / halfLife);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.BitSet;
+import java.util.List;
+
+import org.jenkinsci.plugins.externalscheduler.DurationEstimator;
+import org.jenkinsci.plugins.externalscheduler.LabelMatchCache;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.StateProvider;
+
+/**
+ * Translate queue state and solutions to and from compact binary form.
+ *
+ * Carries the same information as {@link JsonSerializer}. Ready nodes are
+ * written once and items refer to them by index. Numbers are big-endian,
+ * strings are UTF-8 prefixed by their length in bytes or -1 for null. Every
+ * message is prefixed by its length in bytes not counting the prefix.
+ *
+ * <pre>
+ * state      := length:int MAGIC:int VERSION:int node-count:int node* item-count:int item*
+ * node       := name:string executors:int free-executors:int
+ * item       := id:int priority:int in-queue-since:long estimated-duration:long name:string
+ *               assigned:string candidate-count:int node-index:int*
+ *
+ * solution   := length:int MAGIC:int VERSION:int name-count:int name:string*
+ *               assignment-count:int assignment* group-count:int group*
+ * assignment := id:int name-index:int
+ * group      := member-count:int id:int*
+ * </pre>
+ *
+ * Durations are in milliseconds, estimated duration is -1 when not known.
+ * Name index -1 denotes item planner decided not to run.
+ *
+ * @author ogondza
+ */
+public class BinarySerializer {
+
+    public static final String CONTENT_TYPE = "application/x-external-scheduler";
+
+    /*package*/ static final int MAGIC = 0x45585453;
+
+    /*package*/ static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int DEFAULT_PRIORITY = 50;
+
+    private final DurationEstimator estimator;
+
+    private final LabelMatchCache labelMatches;
+
+    public BinarySerializer() {
+
+        this(new DurationEstimator());
+    }
+
+    /**
+     * @param estimator Source of expected item durations
+     */
+    public BinarySerializer(final DurationEstimator estimator) {
+
+        this(estimator, new LabelMatchCache());
+    }
+
+    /**
+     * @param estimator Source of expected item durations
+     * @param labelMatches Cache of nodes matching item labels
+     */
+    public BinarySerializer(final DurationEstimator estimator, final LabelMatchCache labelMatches) {
+
+        if (estimator == null) throw new IllegalArgumentException("No estimator");
+        if (labelMatches == null) throw new IllegalArgumentException("No label matches");
+
+        this.estimator = estimator;
+        this.labelMatches = labelMatches;
+    }
+
+    /**
+     * Serialize buildable items together with nodes they can be executed on
+     *
+     * @param state Current queue and node state
+     * @param previous Last known solution or null
+     * @return Buffer ready to be read
+     */
+    public ByteBuffer serialize(final StateProvider state, final NodeAssignments previous) {
+
+        final List<Node> readyNodes = state.getNodes();
+        final List<Queue.BuildableItem> queue = state.getQueue();
+
+        final Output out = new Output(64 + 32 * readyNodes.size() + 64 * queue.size());
+        final int start = out.begin();
+
+        out.putInt(readyNodes.size());
+        for (final Node node: readyNodes) {
+
+            out.putString(node.getSelfLabel().toString());
+            out.putInt(node.getNumExecutors());
+            out.putInt(freeExecutors(node));
+        }
+
+        out.putInt(queue.size());
+        for (final Queue.BuildableItem item: queue) {
+
+            out.putInt(item.id);
+            out.putInt(DEFAULT_PRIORITY);
+            out.putLong(item.getInQueueSince());
+            out.putLong(estimator.estimate(item));
+            out.putString(item.task.getDisplayName());
+            out.putString(previous == null ? null : previous.nodeName(item));
+            candidates(out, item, readyNodes);
+        }
+
+        return out.end(start);
+    }
+
+    /**
+     * Write indices of ready nodes item can be executed on
+     */
+    private void candidates(final Output out, final Queue.BuildableItem item, final List<Node> readyNodes) {
+
+        final BitSet candidates = labelMatches.candidates(item, readyNodes);
+
+        out.putInt(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+
+            out.putInt(i);
+        }
+    }
+
+    /**
+     * Number of idle executors reported to planner
+     */
+    protected int freeExecutors(final Node node) {
+
+        final Computer computer = node.toComputer();
+        return computer == null ? 0 : computer.countIdle();
+    }
+
+    /**
+     * Read solution sent by planner
+     *
+     * @param solution Buffer positioned at the start of the message. Position
+     * is moved past the message.
+     * @throws IOException In case the message is malformed.
+     */
+    public NodeAssignments deserialize(final ByteBuffer solution) throws IOException {
+
+        try {
+
+            final int length = solution.getInt();
+            if (length < 0 || length > solution.remaining()) throw new IOException(
+                    "Solution of " + length + " bytes truncated to " + solution.remaining()
+            );
+
+            final ByteBuffer in = solution.slice();
+            in.limit(length);
+            solution.position(solution.position() + length);
+
+            header(in);
+
+            final String[] names = new String[checkedCount(in)];
+            for (int i = 0; i < names.length; i++) {
+
+                names[i] = getString(in);
+                if (names[i] == null) throw new IOException("No node name");
+            }
+
+            final NodeAssignments.Builder builder = NodeAssignments.builder();
+            for (int assignments = in.getInt(); assignments > 0; assignments--) {
+
+                final int id = in.getInt();
+                final int node = in.getInt();
+                if (node == -1) continue;
+
+                if (node < 0 || node >= names.length) throw new IOException("Invalid node index " + node);
+
+                builder.assign(id, names[node]);
+            }
+
+            for (int groups = in.getInt(); groups > 0; groups--) {
+
+                final int[] members = new int[checkedCount(in)];
+                for (int i = 0; i < members.length; i++) {
+
+                    members[i] = in.getInt();
+                }
+
+                builder.group(members);
+            }
+
+            return builder.build();
+        } catch (final BufferUnderflowException ex) {
+
+            throw new IOException("Solution truncated", ex);
+        }
+    }
+
+    private static void header(final ByteBuffer in) throws IOException {
+
+        final int magic = in.getInt();
+        if (magic != MAGIC) throw new IOException("Not an external scheduler message: " + Integer.toHexString(magic));
+
+        final int version = in.getInt();
+        if (version != VERSION) throw new IOException("Unsupported version " + version);
+    }
+
+    /**
+     * Read count making sure the message can hold that many ints
+     */
+    private static int checkedCount(final ByteBuffer in) throws IOException {
+
+        final int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 4) throw new IOException("Invalid count " + count);
+
+        return count;
+    }
+
+    private static String getString(final ByteBuffer in) throws IOException {
+
+        final int length = in.getInt();
+        if (length == -1) return null;
+
+        if (length < 0 || length > in.remaining()) throw new IOException("Invalid string length " + length);
+
+        final String string;
+        if (in.hasArray()) {
+
+            string = new String(in.array(), in.arrayOffset() + in.position(), length, UTF8);
+            in.position(in.position() + length);
+        } else {
+
+            final byte[] bytes = new byte[length];
+            in.get(bytes);
+            string = new String(bytes, UTF8);
+        }
+
+        return string;
+    }
+
+    /**
+     * Growing buffer messages are written to
+     */
+    private static final class Output {
+
+        private ByteBuffer buffer;
+
+        private Output(final int capacity) {
+
+            buffer = ByteBuffer.allocate(capacity);
+        }
+
+        /**
+         * Start message
+         *
+         * @return Position of length prefix
+         */
+        private int begin() {
+
+            final int start = reserveInt();
+            putInt(MAGIC);
+            putInt(VERSION);
+            return start;
+        }
+
+        /**
+         * Fill in length prefix and prepare buffer to be read
+         */
+        private ByteBuffer end(final int start) {
+
+            buffer.putInt(start, buffer.position() - start - 4);
+            buffer.flip();
+            return buffer;
+        }
+
+        /**
+         * Leave space for int written later
+         *
+         * @return Position of the int
+         */
+        private int reserveInt() {
+
+            final int position = buffer.position();
+            putInt(0);
+            return position;
+        }
+
+        private void putInt(final int value) {
+
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putLong(final long value) {
+
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        private void putString(final String value) {
+
+            if (value == null) {
+
+                putInt(-1);
+                return;
+            }
+
+            final byte[] bytes = value.getBytes(UTF8);
+            ensure(4 + bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void ensure(final int bytes) {
+
+            if (buffer.remaining() >= bytes) return;
+
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.externalscheduler.DurationEstimator;
+import org.jenkinsci.plugins.externalscheduler.LabelMatchCache;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.StateDelta;
+import org.jenkinsci.plugins.externalscheduler.StateProvider;
+
+/**
+ * Translate queue state and solutions to and from JSON.
+ *
+ * Documents are written without any whitespace to keep requests small.
+ * Item <tt>estimatedDuration</tt> in milliseconds is omitted when not known.
+ *
+ * @author ogondza
+ */
+public class JsonSerializer {
+
+    /**
+     * Node name used by planner for items it decided not to run
+     */
+    public static final String NOT_ASSIGNED = "not-assigned";
+
+    private static final int DEFAULT_PRIORITY = 50;
+
+    private final DurationEstimator estimator;
+
+    private final LabelMatchCache labelMatches;
+
+    public JsonSerializer() {
+
+        this(new DurationEstimator());
+    }
+
+    /**
+     * @param estimator Source of expected item durations
+     */
+    public JsonSerializer(final DurationEstimator estimator) {
+
+        this(estimator, new LabelMatchCache());
+    }
+
+    /**
+     * @param estimator Source of expected item durations
+     * @param labelMatches Cache of nodes matching item labels
+     */
+    public JsonSerializer(final DurationEstimator estimator, final LabelMatchCache labelMatches) {
+
+        if (estimator == null) throw new IllegalArgumentException("No estimator");
+        if (labelMatches == null) throw new IllegalArgumentException("No label matches");
+
+        this.estimator = estimator;
+        this.labelMatches = labelMatches;
+    }
+
+    /**
+     * Serialize buildable items together with nodes they can be executed on
+     *
+     * @param state Current queue and node state
+     * @param previous Last known solution or null
+     */
+    public String serialize(final StateProvider state, final NodeAssignments previous) {
+
+        return queue(state, previous).toString();
+    }
+
+    /**
+     * Serialize buildable items together with state version they represent
+     *
+     * @param version Version of {@link org.jenkinsci.plugins.externalscheduler.StateTracker}
+     * the state corresponds to. Planner receives changes since this version next time.
+     */
+    public String serialize(final StateProvider state, final NodeAssignments previous, final long version) {
+
+        return queue(state, previous).element("version", version).toString();
+    }
+
+    private JSONObject queue(final StateProvider state, final NodeAssignments previous) {
+
+        final List<Node> readyNodes = state.getNodes();
+
+        final JSONArray queue = new JSONArray();
+        for (final Queue.BuildableItem item: state.getQueue()) {
+
+            queue.add(item(item, candidates(item, readyNodes), previous));
+        }
+
+        return new JSONObject().element("queue", queue);
+    }
+
+    /**
+     * Serialize changes of buildable queue since planner has seen it
+     *
+     * Document lists ids of items that left the queue, items that were
+     * added to it in the same format as full state and all ready nodes as
+     * free executors change with every build. Removals are meant to be
+     * applied before additions.
+     *
+     * @param state Current queue and node state
+     * @param delta Complete changes with no node changes
+     * @param since Version planner has seen
+     * @param previous Last known solution or null
+     */
+    public String serialize(
+            final StateProvider state, final StateDelta delta, final long since, final NodeAssignments previous
+    ) {
+
+        if (!delta.isComplete() || delta.hasNodeChanges()) throw new IllegalArgumentException(
+                "Full state needed for " + delta
+        );
+
+        final Set<Integer> added = new HashSet<Integer>();
+        final JSONArray removed = new JSONArray();
+        for (final StateDelta.Change change: delta.changes()) {
+
+            if (change.kind() == StateDelta.Kind.ITEM_ADDED) {
+
+                added.add(change.item());
+            } else if (!added.remove(change.item())) {
+
+                // Planner has not seen items added since
+                removed.add(change.item());
+            }
+        }
+
+        final List<Node> readyNodes = state.getNodes();
+
+        final JSONArray queue = new JSONArray();
+        if (!added.isEmpty()) {
+
+            for (final Queue.BuildableItem item: state.getQueue()) {
+
+                if (added.contains(item.id)) {
+
+                    queue.add(item(item, candidates(item, readyNodes), previous));
+                }
+            }
+        }
+
+        final JSONArray nodes = new JSONArray();
+        for (final Node node: readyNodes) {
+
+            nodes.add(node(node));
+        }
+
+        return new JSONObject()
+                .element("since", since)
+                .element("version", delta.version())
+                .element("removed", removed)
+                .element("added", queue)
+                .element("nodes", nodes)
+                .toString()
+        ;
+    }
+
+    private JSONObject item(
+            final Queue.BuildableItem item, final JSONArray nodes, final NodeAssignments previous
+    ) {
+
+        final String assigned = previous == null ? null : previous.nodeName(item);
+
+        final JSONObject json = new JSONObject()
+                .element("id", item.id)
+                .element("priority", DEFAULT_PRIORITY)
+                .element("inQueueSince", item.getInQueueSince())
+                .element("name", item.task.getDisplayName())
+        ;
+
+        final long estimate = estimator.estimate(item);
+        if (estimate >= 0) {
+
+            json.element("estimatedDuration", estimate);
+        }
+
+        return json
+                .element("nodes", nodes)
+                .element("assigned", assigned == null ? JSONNull.getInstance() : assigned)
+        ;
+    }
+
+    /**
+     * Ready nodes item can be executed on
+     */
+    private JSONArray candidates(final Queue.BuildableItem item, final List<Node> readyNodes) {
+
+        final BitSet candidates = labelMatches.candidates(item, readyNodes);
+
+        final JSONArray nodes = new JSONArray();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+
+            nodes.add(node(readyNodes.get(i)));
+        }
+
+        return nodes;
+    }
+
+    private JSONObject node(final Node node) {
+
+        return new JSONObject()
+                .element("name", node.getSelfLabel().toString())
+                .element("executors", node.getNumExecutors())
+                .element("freeExecutors", freeExecutors(node))
+        ;
+    }
+
+    /**
+     * Number of idle executors reported to planner
+     */
+    protected int freeExecutors(final Node node) {
+
+        final Computer computer = node.toComputer();
+        return computer == null ? 0 : computer.countIdle();
+    }
+
+    /**
+     * Apply partial solution sent by planner
+     *
+     * Items listed in <tt>patch</tt> are reassigned or unassigned, in case
+     * of {@link #NOT_ASSIGNED} node, while the rest of base assignments is
+     * kept. Groups with an unassigned member are left waiting as a whole.
+     */
+    public NodeAssignments patch(final NodeAssignments base, final String patch) {
+
+        return patch(base, JSONObject.fromObject(patch));
+    }
+
+    /*package*/ NodeAssignments patch(final NodeAssignments base, final JSONObject patch) {
+
+        final JSONArray assignments = patch.getJSONArray("patch");
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder(base);
+        for (int i = 0; i < assignments.size(); i++) {
+
+            final JSONObject assignment = assignments.getJSONObject(i);
+            final int id = assignment.getInt("id");
+            final String node = assignment.getString("node");
+
+            builder.unassign(id);
+            if (!NOT_ASSIGNED.equals(node)) {
+
+                builder.assign(id, node);
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Read solution sent by planner
+     *
+     * Assignments with the same optional <tt>group</tt> are assigned all or none.
+     */
+    public NodeAssignments deserialize(final String solution) {
+
+        return deserialize(JSONObject.fromObject(solution));
+    }
+
+    /*package*/ NodeAssignments deserialize(final JSONObject solution) {
+
+        final JSONArray assignments = solution.getJSONArray("solution");
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        Map<String, List<Integer>> groups = null;
+        for (int i = 0; i < assignments.size(); i++) {
+
+            final JSONObject assignment = assignments.getJSONObject(i);
+            final int id = assignment.getInt("id");
+
+            final String group = assignment.optString("group", null);
+            if (group != null) {
+
+                if (groups == null) {
+
+                    groups = new HashMap<String, List<Integer>>();
+                }
+
+                List<Integer> members = groups.get(group);
+                if (members == null) {
+
+                    members = new ArrayList<Integer>();
+                    groups.put(group, members);
+                }
+
+                members.add(id);
+            }
+
+            final String node = assignment.getString("node");
+
+            if (NOT_ASSIGNED.equals(node)) continue;
+
+            builder.assign(id, node);
+        }
+
+        if (groups != null) {
+
+            for (final List<Integer> members: groups.values()) {
+
+                final int[] ids = new int[members.size()];
+                for (int i = 0; i < ids.length; i++) {
+
+                    ids[i] = members.get(i);
+                }
+
+                builder.group(ids);
+            }
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+
+import net.sf.json.JSONException;
+
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.Scheduler;
+import org.jenkinsci.plugins.externalscheduler.StateDelta;
+import org.jenkinsci.plugins.externalscheduler.StateProvider;
+import org.jenkinsci.plugins.externalscheduler.StateTracker;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Delegate scheduling to planner exposing REST interface.
+ *
+ * Queue state is posted to <tt>queue</tt> resource and the new solution is
+ * fetched from <tt>solution</tt> resource of the server. Documents are JSON
+ * unless binary protocol is configured, see {@link BinarySerializer}.
+ *
+ * Planner can opt in to receive changes only. Full state is posted once and
+ * changes since the version planner has seen are posted to <tt>delta</tt>
+ * resource afterwards, see {@link JsonSerializer#serialize(StateProvider, StateDelta, long, NodeAssignments)}.
+ * Full state is posted again when node changes or when the planner might
+ * have missed some changes. Binary protocol always posts full state.
+ *
+ * @author ogondza
+ */
+public class PluginScheduler extends Scheduler {
+
+    private final URL serverUrl;
+
+    private final boolean binary;
+
+    private final boolean delta;
+
+    private transient RestClient client;
+    private transient JsonSerializer serializer;
+    private transient BinarySerializer binarySerializer;
+    private transient StateProvider state;
+    private transient StateTracker tracker;
+    private transient volatile NodeAssignments previous;
+
+    /**
+     * State version planner has seen. Negative if unknown.
+     */
+    private transient long seen;
+
+    public PluginScheduler(final String serverUrl) throws MalformedURLException {
+
+        this(serverUrl, false);
+    }
+
+    public PluginScheduler(final String serverUrl, final boolean binary) throws MalformedURLException {
+
+        this(serverUrl, binary, false);
+    }
+
+    @DataBoundConstructor
+    public PluginScheduler(
+            final String serverUrl, final boolean binary, final boolean delta
+    ) throws MalformedURLException {
+
+        this(new URL(serverUrl), null, binary, delta, null);
+    }
+
+    /*package*/ PluginScheduler(final URL serverUrl, final StateProvider state) {
+
+        this(serverUrl, state, false);
+    }
+
+    /*package*/ PluginScheduler(final URL serverUrl, final StateProvider state, final boolean binary) {
+
+        this(serverUrl, state, binary, false, null);
+    }
+
+    /*package*/ PluginScheduler(final URL serverUrl, final StateProvider state, final StateTracker tracker) {
+
+        this(serverUrl, state, false, true, tracker);
+    }
+
+    private PluginScheduler(
+            final URL serverUrl, final StateProvider state, final boolean binary,
+            final boolean delta, final StateTracker tracker
+    ) {
+
+        if (serverUrl == null) throw new IllegalArgumentException("No server url");
+
+        this.serverUrl = serverUrl;
+        this.state = state;
+        this.binary = binary;
+        this.delta = delta;
+        this.tracker = tracker;
+        readResolve();
+    }
+
+    private Object readResolve() {
+
+        if (tracker == null) {
+
+            tracker = stateTracker();
+        }
+
+        seen = -1;
+
+        client = new RestClient(serverUrl);
+        serializer = new JsonSerializer(durationEstimator(), labelMatches());
+        binarySerializer = new BinarySerializer(durationEstimator(), labelMatches());
+        return this;
+    }
+
+    public String getServerUrl() {
+
+        return serverUrl.toExternalForm();
+    }
+
+    public boolean isBinary() {
+
+        return binary;
+    }
+
+    public boolean isDelta() {
+
+        return delta;
+    }
+
+    /**
+     * @throws IllegalStateException In case planner is not reachable or responds with invalid solution.
+     */
+    @Override
+    public NodeAssignments solution() {
+
+        final StateProvider current = state();
+        return solution(new Snapshot(current.getQueue(), current.getNodes()));
+    }
+
+    /**
+     * Planner is given the state solution is requested for
+     *
+     * @throws IllegalStateException In case planner is not reachable or responds with invalid solution.
+     */
+    @Override
+    public NodeAssignments solution(final List<Queue.BuildableItem> queue, final List<Node> nodes) {
+
+        return solution(new Snapshot(queue, nodes));
+    }
+
+    private NodeAssignments solution(final StateProvider snapshot) {
+
+        try {
+
+            if (binary) {
+
+                client.post("queue", binarySerializer.serialize(snapshot, previous), BinarySerializer.CONTENT_TYPE);
+                previous = binarySerializer.deserialize(client.get("solution", BinarySerializer.CONTENT_TYPE));
+            } else if (delta) {
+
+                postChanges(snapshot);
+                previous = serializer.deserialize(client.get("solution"));
+            } else {
+
+                client.post("queue", serializer.serialize(snapshot, previous));
+                previous = serializer.deserialize(client.get("solution"));
+            }
+
+            return previous;
+        } catch (final IOException ex) {
+
+            throw new IllegalStateException("Unable to get solution from " + serverUrl, ex);
+        } catch (final JSONException ex) {
+
+            throw new IllegalStateException("Invalid solution obtained from " + serverUrl, ex);
+        }
+    }
+
+    /**
+     * Post changes planner has not seen yet, full state if not possible
+     */
+    private void postChanges(final StateProvider snapshot) throws IOException {
+
+        final long since = seen;
+
+        // Planner state is not known until post succeeds
+        seen = -1;
+
+        final long version = tracker.sync(snapshot.getQueue(), snapshot.getNodes());
+
+        final StateDelta changes = since < 0 ? null : tracker.changesSince(since);
+        if (changes != null && changes.isComplete() && !changes.hasNodeChanges()) {
+
+            client.post("delta", serializer.serialize(snapshot, changes, since, previous));
+            seen = changes.version();
+        } else {
+
+            client.post("queue", serializer.serialize(snapshot, previous, version));
+            seen = version;
+        }
+    }
+
+    /**
+     * Queue and nodes read once so tracker and serializer see the same state
+     */
+    private static final class Snapshot implements StateProvider {
+
+        private final List<Queue.BuildableItem> queue;
+        private final List<Node> nodes;
+
+        private Snapshot(final List<Queue.BuildableItem> queue, final List<Node> nodes) {
+
+            this.queue = queue;
+            this.nodes = nodes;
+        }
+
+        public List<Node> getNodes() {
+
+            return nodes;
+        }
+
+        public List<Queue.BuildableItem> getQueue() {
+
+            return queue;
+        }
+    }
+
+    /**
+     * Planner state is not known once the scheduler is replaced
+     */
+    @Override
+    public void stop() {
+
+        previous = null;
+        seen = -1;
+    }
+
+    private StateProvider state() {
+
+        return state == null ? stateProvider() : state;
+    }
+
+    @Extension
+    public static class Descriptor extends Scheduler.Descriptor {
+
+        @Override
+        public String getDisplayName() {
+
+            return "Delegate scheduling to REST service";
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONException;
+
+import org.jenkinsci.plugins.externalscheduler.ExternalScheduler;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.Scheduler;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Receive solutions pushed by planner.
+ *
+ * Planner POSTs newline-delimited JSON documents to
+ * <tt>JENKINS_URL/external-scheduler/push</tt> while {@link PushScheduler} is
+ * active. Every document is applied and put in effect as soon as it is read
+ * so the request can stay open for as long as the planner has updates.
+ * Reading stops at the first invalid document, the preceding ones remain
+ * applied.
+ *
+ * @author ogondza
+ */
+@Extension
+public class PushEndpoint implements RootAction {
+
+    public String getIconFileName() {
+
+        return null;
+    }
+
+    public String getDisplayName() {
+
+        return null;
+    }
+
+    public String getUrlName() {
+
+        return "external-scheduler";
+    }
+
+    public void doPush(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        jenkins.checkPermission(Jenkins.ADMINISTER);
+
+        if (!"POST".equals(req.getMethod())) {
+
+            rsp.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "POST expected");
+            return;
+        }
+
+        final ExternalScheduler plugin = jenkins.getPlugin(ExternalScheduler.class);
+        final Scheduler active = plugin == null ? null : plugin.activeScheduler();
+        if (!(active instanceof PushScheduler)) {
+
+            rsp.sendError(HttpServletResponse.SC_CONFLICT, "Active scheduler does not accept pushed solutions");
+            return;
+        }
+
+        final PushScheduler scheduler = (PushScheduler) active;
+        final BufferedReader reader = req.getReader();
+        int applied = 0;
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+
+            if (line.trim().length() == 0) continue;
+
+            final NodeAssignments solution;
+            try {
+
+                solution = scheduler.update(line);
+            } catch (final JSONException ex) {
+
+                rsp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid update #" + (applied + 1) + ": " + ex.getMessage());
+                return;
+            } catch (final IllegalStateException ex) {
+
+                rsp.sendError(HttpServletResponse.SC_CONFLICT, "Update #" + (applied + 1) + " not applied: " + ex.getMessage());
+                return;
+            }
+
+            applied++;
+            if (plugin.solutionCache().publish(scheduler, solution)) {
+
+                jenkins.getQueue().scheduleMaintenance();
+            }
+        }
+
+        rsp.setContentType("text/plain;charset=UTF-8");
+        rsp.getWriter().println("Applied " + applied + " updates");
+    }
+}
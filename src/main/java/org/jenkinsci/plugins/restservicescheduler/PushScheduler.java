@@ -0,0 +1,307 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import hudson.Extension;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.Scheduler;
+import org.jenkinsci.plugins.externalscheduler.StateDelta;
+import org.jenkinsci.plugins.externalscheduler.StateTracker;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * Use solutions planner pushes to Jenkins.
+ *
+ * Planner sends updates to {@link PushEndpoint} whenever its plan changes
+ * instead of being asked for solution. Every update is either complete
+ * solution, in the format {@link PluginScheduler} fetches, or a patch of the
+ * latest one, see {@link JsonSerializer#patch(NodeAssignments, String)}.
+ * Jenkins schedules builds the default way until the first complete solution
+ * arrives, patches are rejected until then.
+ *
+ * Items are dropped from the latest solution once they leave the queue so
+ * patches do not accumulate assignments of items built long ago. Items that
+ * are blocked or waiting keep their assignments. Only planned items that are
+ * not buildable are looked up in the queue unless planner pushed an update
+ * in the meantime.
+ *
+ * @author ogondza
+ */
+public class PushScheduler extends Scheduler {
+
+    private transient AtomicReference<NodeAssignments> latest;
+    private transient JsonSerializer serializer;
+    private transient StateTracker tracker;
+
+    /**
+     * Number of updates applied
+     */
+    private transient AtomicLong updates;
+
+    /**
+     * State version and number of updates latest solution was reconciled
+     * with. Negative version if unknown.
+     */
+    private transient long reconciled;
+    private transient long reconciledUpdates;
+
+    /**
+     * Planned items that were not buildable when reconciled last time
+     */
+    private transient Set<Integer> parked;
+
+    @DataBoundConstructor
+    public PushScheduler() {
+
+        this(null);
+    }
+
+    /*package*/ PushScheduler(final StateTracker tracker) {
+
+        this.tracker = tracker;
+        readResolve();
+    }
+
+    private Object readResolve() {
+
+        if (tracker == null) {
+
+            tracker = stateTracker();
+        }
+
+        latest = new AtomicReference<NodeAssignments>();
+        serializer = new JsonSerializer();
+        updates = new AtomicLong();
+        reconciled = -1;
+        parked = new HashSet<Integer>();
+        return this;
+    }
+
+    /**
+     * @return Latest pushed solution or null if nothing was pushed yet.
+     */
+    @Override
+    public NodeAssignments solution() {
+
+        return latest.get();
+    }
+
+    /**
+     * Items that left the queue unnoticed are dropped from the latest solution.
+     *
+     * Solution is reconciled with the whole queue only after update or when
+     * the changes since the previous call are not known. Otherwise only
+     * planned items that are not buildable are looked up.
+     *
+     * @return Latest pushed solution or null if nothing was pushed yet.
+     */
+    @Override
+    public NodeAssignments solution(final List<Queue.BuildableItem> queue, final List<Node> nodes) {
+
+        final long since = reconciled;
+        // Read before the solution so updates applied meanwhile are reconciled next time
+        final long updated = updates.get();
+        final long version = tracker.sync(queue, nodes);
+
+        final StateDelta changes = since < 0 || updated != reconciledUpdates
+                ? null
+                : tracker.changesSince(since)
+        ;
+
+        final NodeAssignments solution;
+        if (changes != null && changes.isComplete()) {
+
+            solution = reconcile(changes);
+            reconciled = changes.version();
+        } else {
+
+            solution = reconcile(queue);
+            reconciled = version;
+        }
+
+        reconciledUpdates = updated;
+        return solution;
+    }
+
+    /**
+     * Look up items that stopped being buildable and those still not buildable
+     */
+    private NodeAssignments reconcile(final StateDelta changes) {
+
+        for (final StateDelta.Change change: changes.changes()) {
+
+            if (change.kind() == StateDelta.Kind.ITEM_REMOVED) {
+
+                parked.add(change.item());
+            } else if (change.kind() == StateDelta.Kind.ITEM_ADDED) {
+
+                parked.remove(change.item());
+            }
+        }
+
+        final NodeAssignments current = latest.get();
+        final int[] left = new int[parked.size()];
+        int count = 0;
+        final Iterator<Integer> it = parked.iterator();
+        while (it.hasNext()) {
+
+            final int id = it.next();
+            if (current == null || !current.isPlanned(id)) {
+
+                it.remove();
+            } else if (!isQueued(id)) {
+
+                it.remove();
+                left[count++] = id;
+            }
+        }
+
+        return assignmentEvictor().evictUnreported(latest, Arrays.copyOf(left, count));
+    }
+
+    /**
+     * Reconcile with all queued items and remember planned ones that are not buildable
+     */
+    private NodeAssignments reconcile(final List<Queue.BuildableItem> queue) {
+
+        parked.clear();
+
+        final NodeAssignments solution = assignmentEvictor().reconcile(latest, queued());
+        if (solution == null) return null;
+
+        final Set<Integer> buildable = new HashSet<Integer>(queue.size() * 2);
+        for (final Queue.BuildableItem item: queue) {
+
+            buildable.add(item.id);
+        }
+
+        for (final int id: solution.plannedItems()) {
+
+            if (!buildable.contains(id)) {
+
+                parked.add(id);
+            }
+        }
+
+        return solution;
+    }
+
+    /**
+     * Ids of all items in the queue, buildable or not
+     */
+    /*package*/ int[] queued() {
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) return new int[0];
+
+        final Queue.Item[] items = jenkins.getQueue().getItems();
+        final int[] ids = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+
+            ids[i] = items[i].id;
+        }
+
+        return ids;
+    }
+
+    /*package*/ boolean isQueued(final int id) {
+
+        final Jenkins jenkins = Jenkins.getInstance();
+        return jenkins != null && jenkins.getQueue().getItem(id) != null;
+    }
+
+    @Override
+    public void itemsLeft(final int... ids) {
+
+        assignmentEvictor().evict(latest, ids);
+    }
+
+    /**
+     * Forget pushed solution so it is not served once the scheduler is active again
+     */
+    @Override
+    public void stop() {
+
+        latest.set(null);
+        updates.incrementAndGet();
+    }
+
+    /**
+     * Apply update sent by planner
+     *
+     * Patches are applied to the latest solution atomically.
+     *
+     * @return Solution in effect after the update
+     * @throws net.sf.json.JSONException In case update is not valid.
+     * @throws IllegalStateException In case of patch with no complete solution to apply it to.
+     */
+    /*package*/ NodeAssignments update(final String update) {
+
+        final JSONObject json = JSONObject.fromObject(update);
+        if (!json.has("patch")) {
+
+            final NodeAssignments solution = serializer.deserialize(json);
+            latest.set(solution);
+            updates.incrementAndGet();
+            return solution;
+        }
+
+        while (true) {
+
+            final NodeAssignments base = latest.get();
+            if (base == null) throw new IllegalStateException("No solution to patch");
+
+            final NodeAssignments patched = serializer.patch(base, json);
+            if (latest.compareAndSet(base, patched)) {
+
+                updates.incrementAndGet();
+                return patched;
+            }
+        }
+    }
+
+    @Extension
+    public static class Descriptor extends Scheduler.Descriptor {
+
+        @Override
+        public String getDisplayName() {
+
+            return "Accept solutions pushed by REST service";
+        }
+    }
+}
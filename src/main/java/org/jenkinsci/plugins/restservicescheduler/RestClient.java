@@ -0,0 +1,247 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * HTTP client talking to REST planner.
+ *
+ * Connections are kept alive between requests by JDK connection cache. This
+ * works as long as response bodies are always read to the end and connections
+ * are not disconnected explicitly.
+ *
+ * @author ogondza
+ */
+public class RestClient {
+
+    private static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /*package*/ static final int CONNECT_TIMEOUT = Integer.getInteger(
+            RestClient.class.getName() + ".connectTimeout", 5000
+    );
+
+    /*package*/ static final int READ_TIMEOUT = Integer.getInteger(
+            RestClient.class.getName() + ".readTimeout", 10000
+    );
+
+    private final URL serverUrl;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public RestClient(final URL serverUrl) {
+
+        this(serverUrl, CONNECT_TIMEOUT, READ_TIMEOUT);
+    }
+
+    /**
+     * @param connectTimeout Connect timeout in milliseconds
+     * @param readTimeout Read timeout in milliseconds
+     */
+    public RestClient(final URL serverUrl, final int connectTimeout, final int readTimeout) {
+
+        if (serverUrl == null) throw new IllegalArgumentException("No server url");
+
+        this.serverUrl = serverUrl;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    public URL getServerUrl() {
+
+        return serverUrl;
+    }
+
+    /**
+     * Send document to planner
+     */
+    public void post(final String path, final String body) throws IOException {
+
+        post(path, ByteBuffer.wrap(body.getBytes("UTF-8")), CONTENT_TYPE);
+    }
+
+    /**
+     * Send binary document to planner
+     *
+     * @param body Remaining content of the buffer is sent. Buffer position is not moved.
+     */
+    public void post(final String path, final ByteBuffer body, final String contentType) throws IOException {
+
+        final HttpURLConnection connection = open(path);
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setFixedLengthStreamingMode(body.remaining());
+
+        final OutputStream out = connection.getOutputStream();
+        try {
+
+            if (body.hasArray()) {
+
+                out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } else {
+
+                final ByteBuffer content = body.duplicate();
+                final WritableByteChannel channel = Channels.newChannel(out);
+                while (content.hasRemaining()) {
+
+                    channel.write(content);
+                }
+            }
+        } finally {
+
+            out.close();
+        }
+
+        readResponse(connection);
+    }
+
+    /**
+     * Get document from planner
+     */
+    public String get(final String path) throws IOException {
+
+        final HttpURLConnection connection = open(path);
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Accept", CONTENT_TYPE);
+
+        return readResponse(connection);
+    }
+
+    /**
+     * Get binary document from planner
+     */
+    public ByteBuffer get(final String path, final String contentType) throws IOException {
+
+        final HttpURLConnection connection = open(path);
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Accept", contentType);
+
+        checkResponse(connection);
+
+        final InputStream in = connection.getInputStream();
+        try {
+
+            return read(in, connection.getContentLength());
+        } finally {
+
+            in.close();
+        }
+    }
+
+    /**
+     * Read stream to the end directly into buffer
+     *
+     * @param length Expected length or -1 if not known
+     * @return Buffer ready to be read
+     */
+    /*package*/ static ByteBuffer read(final InputStream in, final int length) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(length >= 0 ? length : BUFFER_SIZE);
+        for (;;) {
+
+            if (!buffer.hasRemaining()) {
+
+                // Make sure the stream is over before growing the buffer
+                final int next = in.read();
+                if (next == -1) break;
+
+                final ByteBuffer grown = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), BUFFER_SIZE));
+                buffer.flip();
+                grown.put(buffer);
+                grown.put((byte) next);
+                buffer = grown;
+            }
+
+            final int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read == -1) break;
+
+            buffer.position(buffer.position() + read);
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private HttpURLConnection open(final String path) throws IOException {
+
+        final HttpURLConnection connection = (HttpURLConnection) url(path).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+
+        return connection;
+    }
+
+    private URL url(final String path) throws MalformedURLException {
+
+        final String base = serverUrl.toExternalForm();
+        return new URL(base.endsWith("/") ? base + path : base + "/" + path);
+    }
+
+    /**
+     * Read whole response so the connection can be reused
+     */
+    private String readResponse(final HttpURLConnection connection) throws IOException {
+
+        checkResponse(connection);
+        return read(connection.getInputStream());
+    }
+
+    private void checkResponse(final HttpURLConnection connection) throws IOException {
+
+        final int code = connection.getResponseCode();
+        if (code >= 400) {
+
+            final InputStream error = connection.getErrorStream();
+            final String message = error == null ? "" : read(error);
+            throw new IOException(String.format(
+                    "%s responded %d %s: %s", connection.getURL(), code, connection.getResponseMessage(), message
+            ));
+        }
+    }
+
+    private String read(final InputStream in) throws IOException {
+
+        try {
+
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+
+            in.close();
+        }
+    }
+}
@@ -115,6 +115,43 @@ public class AbstractCiStateProviderTest {
         assertSame(jenkins, nodes.get(1));
     }
 
+    @Test
+    public void reuseNodesUntilChanged() {
+
+        final Node slave = node();
+        usingNodes(jenkins, slave);
+
+        final AbstractCiStateProvider provider = new AbstractCiStateProvider(jenkins);
+        final List<Node> nodes = provider.getNodes();
+
+        assertEquals(2, nodes.size());
+        assertSame(nodes, provider.getNodes());
+
+        when(slave.toComputer()).thenReturn(offlineComputer);
+        assertSame(nodes, provider.getNodes());
+
+        provider.nodesChanged();
+
+        final List<Node> changed = provider.getNodes();
+        assertEquals(1, changed.size());
+        assertSame(jenkins, changed.get(0));
+    }
+
+    @Test
+    public void changesAreTrackedPerProvider() {
+
+        final Node slave = node();
+        usingNodes(jenkins, slave);
+
+        final AbstractCiStateProvider provider = new AbstractCiStateProvider(jenkins);
+        final AbstractCiStateProvider other = new AbstractCiStateProvider(jenkins);
+        final List<Node> nodes = provider.getNodes();
+
+        other.nodesChanged();
+
+        assertSame(nodes, provider.getNodes());
+    }
+
     private List<Node> usingNodes(
             final AbstractCIBase jenkins, final Node... slaves
     ) {
@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class AssignmentEvictorTest {
+
+    private final AssignmentEvictor evictor = new AssignmentEvictor();
+
+    private final AtomicReference<NodeAssignments> solution = new AtomicReference<NodeAssignments>(
+            NodeAssignments.builder()
+                    .assign(1, "master")
+                    .assign(2, "slave")
+                    .leaveWaiting(3)
+                    .order(4)
+                    .build()
+    );
+
+    @Test
+    public void evictItemsThatLeft() {
+
+        final NodeAssignments evicted = evictor.evict(solution, 1, 3, 5);
+
+        assertSame(evicted, solution.get());
+        assertArrayEquals(new int[] {2, 4}, evicted.plannedItems());
+        assertEquals(2, evictor.evicted());
+        assertEquals(0, evictor.reconciled());
+    }
+
+    @Test
+    public void keepSolutionWithNothingToEvict() {
+
+        final NodeAssignments original = solution.get();
+
+        assertSame(original, evictor.evict(solution, 42));
+        assertSame(original, evictor.reconcile(solution, new int[] {4, 3, 2, 1, 42}));
+        assertEquals(0, evictor.evicted());
+        assertEquals(0, evictor.reconciled());
+    }
+
+    @Test
+    public void reconcileWithQueue() {
+
+        final NodeAssignments reconciled = evictor.reconcile(solution, new int[] {7, 2, 3});
+
+        assertSame(reconciled, solution.get());
+        assertArrayEquals(new int[] {2, 3}, reconciled.plannedItems());
+        assertEquals("slave", reconciled.nodeName(2));
+        assertEquals(2, evictor.reconciled());
+    }
+
+    @Test
+    public void reconcileWithEmptyQueue() {
+
+        evictor.reconcile(solution, new int[0]);
+
+        assertEquals(NodeAssignments.empty(), solution.get());
+        assertArrayEquals(new int[0], solution.get().plannedItems());
+        assertEquals(4, evictor.reconciled());
+    }
+
+    @Test
+    public void evictUnreportedItems() {
+
+        final NodeAssignments evicted = evictor.evictUnreported(solution, 1, 3, 5);
+
+        assertSame(evicted, solution.get());
+        assertArrayEquals(new int[] {2, 4}, evicted.plannedItems());
+        assertEquals(2, evictor.reconciled());
+        assertEquals(0, evictor.evicted());
+    }
+
+    @Test
+    public void nothingToEvictWithoutSolution() {
+
+        solution.set(null);
+
+        assertNull(evictor.evict(solution, 1));
+        assertNull(evictor.reconcile(solution, new int[0]));
+    }
+}
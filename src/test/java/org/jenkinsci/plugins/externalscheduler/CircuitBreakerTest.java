@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(1000);
+
+    private final CircuitBreaker breaker = new CircuitBreaker(2, 1000);
+
+    @Test
+    public void openAfterConsecutiveFailures() {
+
+        breaker.failure(0);
+        breaker.success();
+        breaker.failure(0);
+        assertTrue(breaker.allow(0));
+
+        breaker.failure(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allow(INTERVAL - 1));
+        assertEquals(1, breaker.opened());
+        assertEquals(1, breaker.rejected());
+    }
+
+    @Test
+    public void closeWhenProbeSucceeds() {
+
+        breaker.failure(0);
+        breaker.failure(0);
+
+        assertTrue(breaker.allow(INTERVAL));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        // Single probe at a time
+        assertFalse(breaker.allow(INTERVAL));
+
+        breaker.success();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.allow(INTERVAL));
+    }
+
+    @Test
+    public void reopenWhenProbeFails() {
+
+        breaker.failure(0);
+        breaker.failure(0);
+
+        assertTrue(breaker.allow(INTERVAL));
+        breaker.failure(INTERVAL);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allow(2 * INTERVAL - 1));
+        assertTrue(breaker.allow(2 * INTERVAL));
+        assertEquals(2, breaker.opened());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNonPositiveThreshold() {
+
+        new CircuitBreaker(0, 1000);
+    }
+}
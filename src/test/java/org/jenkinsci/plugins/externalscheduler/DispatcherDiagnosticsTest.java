@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.labels.LabelAtom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Queue.BuildableItem.class})
+public class DispatcherDiagnosticsTest {
+
+    private final Logger logger = Logger.getLogger(DispatcherDiagnostics.class.getName());
+    private final List<LogRecord> records = new ArrayList<LogRecord>();
+    private final Handler handler = new Handler() {
+
+        @Override
+        public void publish(final LogRecord record) {
+
+            records.add(record);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    };
+
+    private DispatcherDiagnostics diagnostics;
+
+    @Before
+    public void setUp() {
+
+        logger.addHandler(handler);
+        diagnostics = new DispatcherDiagnostics();
+    }
+
+    @After
+    public void tearDown() {
+
+        logger.removeHandler(handler);
+        logger.setLevel(null);
+    }
+
+    @Test
+    public void doNothingWhenDisabled() {
+
+        logger.setLevel(Level.INFO);
+
+        diagnostics.rejected(item(1), node("slave"));
+        diagnostics.assigned(item(1), node("slave"));
+        diagnostics.summarize();
+
+        assertEquals(0, records.size());
+    }
+
+    @Test
+    public void summarizeRejections() {
+
+        logger.setLevel(Level.FINE);
+
+        final Queue.BuildableItem item = item(1);
+        diagnostics.rejected(item, node("slave1"));
+        diagnostics.rejected(item, node("slave2"));
+        diagnostics.rejected(item, node("slave3"));
+        diagnostics.rejected(item(2), node("slave1"));
+
+        assertEquals(0, records.size());
+
+        diagnostics.summarize();
+
+        assertEquals(1, records.size());
+        assertThat(records.get(0).getMessage(), containsString("rejected 4 assignments of 2 items"));
+        assertThat(records.get(0).getMessage(), containsString("Task:1 blocked 3 times"));
+    }
+
+    @Test
+    public void traceItemOncePerInterval() {
+
+        logger.setLevel(Level.FINEST);
+
+        final Queue.BuildableItem item = item(1);
+        diagnostics.rejected(item, node("slave1"));
+        diagnostics.rejected(item, node("slave2"));
+
+        assertEquals(1, records.size());
+        assertEquals(Level.FINEST, records.get(0).getLevel());
+    }
+
+    private Queue.BuildableItem item(final int id) {
+
+        final Queue.Task task = Mockito.mock(Queue.Task.class);
+        Mockito.when(task.getDisplayName()).thenReturn("Task");
+
+        final Queue.BuildableItem item = PowerMockito.mock(Queue.BuildableItem.class);
+        Whitebox.setInternalState(item, "id", id);
+        Whitebox.setInternalState(item, "task", task);
+
+        return item;
+    }
+
+    private Node node(final String name) {
+
+        final Node node = Mockito.mock(Node.class);
+        Mockito.when(node.getSelfLabel()).thenReturn(new LabelAtom(name));
+
+        return node;
+    }
+}
@@ -25,7 +25,9 @@ package org.jenkinsci.plugins.externalscheduler;
 
 import static org.hamcrest.core.StringContains.containsString;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import hudson.model.Node;
 import hudson.model.Queue;
@@ -59,6 +61,7 @@ public class DispatcherTest {
         MockitoAnnotations.initMocks(this);
 
         planner = PowerMockito.mock(ExternalScheduler.class);
+        Mockito.when(planner.isEnabled()).thenReturn(true);
         dispatcher = new Dispatcher(planner);
 
         item = PowerMockito.mock(Queue.BuildableItem.class);
@@ -83,6 +86,16 @@ public class DispatcherTest {
         assertNull(dispatcher.canTake(node("slave"), item));
     }
 
+    @Test
+    public void bypassPassThroughScheduler() {
+
+        Mockito.when(planner.isEnabled()).thenReturn(false);
+        useSolution(NodeAssignments.builder().assign(42, "master").build());
+
+        assertNull(dispatcher.canTake(node("slave"), item));
+        Mockito.verify(planner, Mockito.never()).currentSolution();
+    }
+
     private void notConnected() {
 
         Mockito.when(planner.activeScheduler()).thenReturn(null);
@@ -122,6 +135,53 @@ public class DispatcherTest {
         assertNotTaken(node("slave"));
     }
 
+    @Test
+    public void shareCausesOfBlockage() {
+
+        useSolution(NodeAssignments.builder().assign(41, "slave").assign(43, "master").build());
+
+        final Node slave = node("slave");
+        final CauseOfBlockage cause = dispatcher.canTake(slave, item);
+
+        assertSame(cause, dispatcher.canTake(slave, item));
+        assertSame(cause.getShortDescription(), dispatcher.canTake(slave, item).getShortDescription());
+        assertNotSame(cause, dispatcher.canTake(node("master"), item));
+    }
+
+    @Test
+    public void distinguishUnplannedItems() {
+
+        useSolution(NodeAssignments.builder().assign(41, "slave").build());
+        final CauseOfBlockage notPlanned = dispatcher.canTake(node("slave"), item);
+
+        useSolution(NodeAssignments.builder().assign(42, "master").assign(41, "slave").build());
+        final CauseOfBlockage notAssigned = dispatcher.canTake(node("slave"), item);
+
+        assertSame(NotAssignedCause.Reason.NOT_PLANNED, ((NotAssignedCause) notPlanned).getReason());
+        assertSame(NotAssignedCause.Reason.NOT_ASSIGNED, ((NotAssignedCause) notAssigned).getReason());
+    }
+
+    @Test
+    public void holdWaitingItems() {
+
+        useSolution(NodeAssignments.builder().assign(41, "slave").assign(42, "slave").leaveWaiting(42).build());
+
+        final CauseOfBlockage cause = dispatcher.canTake(node("slave"), item);
+
+        assertSame(NotAssignedCause.Reason.WAITING, ((NotAssignedCause) cause).getReason());
+        assertNotTaken(node("slave"));
+    }
+
+    @Test
+    public void holdIncompleteGroups() {
+
+        useSolution(NodeAssignments.builder().assign(42, "slave").group(42, 43).build());
+
+        final CauseOfBlockage cause = dispatcher.canTake(node("slave"), item);
+
+        assertSame(NotAssignedCause.Reason.GROUP_INCOMPLETE, ((NotAssignedCause) cause).getReason());
+    }
+
     private void assertNotTaken(final Node node) {
 
         final CauseOfBlockage causeOfBlockage = dispatcher.canTake(node, item);
@@ -129,12 +189,7 @@ public class DispatcherTest {
 
         assertThat(
                 causeOfBlockage.getShortDescription(),
-                containsString(item.toString())
-        );
-
-        assertThat(
-                causeOfBlockage.getShortDescription(),
-                containsString(node.toString())
+                containsString(node.getDisplayName())
         );
     }
 
@@ -142,6 +197,7 @@ public class DispatcherTest {
 
         final Node node = Mockito.mock(Node.class);
         Mockito.when(node.getSelfLabel()).thenReturn(new LabelAtom(name));
+        Mockito.when(node.getDisplayName()).thenReturn(name);
 
         return node;
     }
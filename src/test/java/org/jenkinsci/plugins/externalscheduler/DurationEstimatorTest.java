@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DurationEstimatorTest {
+
+    private final DurationEstimator estimator = new DurationEstimator(3);
+
+    @Test
+    public void averageRecentDurations() {
+
+        estimator.record("job", 1000);
+        assertEquals(1000, estimator.average("job"));
+
+        estimator.record("job", 2000);
+        assertEquals(1300, estimator.average("job"));
+        assertEquals(2, estimator.builds("job"));
+    }
+
+    @Test
+    public void unknownJob() {
+
+        assertEquals(-1, estimator.average("job"));
+        assertEquals(-1, estimator.percentile("job", 0.5));
+        assertEquals(0, estimator.builds("job"));
+
+        estimator.record(null, 1000);
+        estimator.record("job", -1);
+        assertEquals(-1, estimator.average("job"));
+    }
+
+    @Test
+    public void estimatePercentiles() {
+
+        for (int i = 1; i <= 100; i++) {
+
+            estimator.record("job", i * 1000);
+        }
+
+        assertWithin(50000, estimator.percentile("job", 0.5));
+        assertWithin(90000, estimator.percentile("job", 0.9));
+        assertWithin(100000, estimator.percentile("job", 1));
+        assertWithin(1000, estimator.percentile("job", 0));
+    }
+
+    @Test
+    public void preferRecentBuildsInHistogram() {
+
+        for (int i = 0; i < DurationEstimator.MAX_WEIGHT; i++) {
+
+            estimator.record("job", 1000);
+        }
+
+        for (int i = 0; i < DurationEstimator.MAX_WEIGHT; i++) {
+
+            estimator.record("job", 60000);
+        }
+
+        assertWithin(60000, estimator.percentile("job", 0.5));
+    }
+
+    @Test
+    public void forgetLeastRecentlyBuiltJobs() {
+
+        estimator.record("a", 1);
+        estimator.record("b", 1);
+        estimator.record("c", 1);
+        estimator.record("a", 1);
+        estimator.record("d", 1);
+
+        assertEquals(2, estimator.builds("a"));
+        assertEquals(0, estimator.builds("b"));
+        assertEquals(1, estimator.builds("c"));
+        assertEquals(1, estimator.builds("d"));
+    }
+
+    @Test
+    public void bucketsCoverDurations() {
+
+        for (long duration = 1; duration < 1L << 31; duration = duration * 3 / 2 + 1) {
+
+            final long representative = DurationEstimator.representative(DurationEstimator.bucket(duration));
+            assertTrue(duration + " ~ " + representative, Math.abs(representative - duration) <= duration / 4 + 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidFraction() {
+
+        estimator.percentile("job", 1.5);
+    }
+
+    private void assertWithin(final long expected, final long actual) {
+
+        assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected / 4);
+    }
+}
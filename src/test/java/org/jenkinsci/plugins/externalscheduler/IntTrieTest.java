@@ -0,0 +1,170 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntTrieTest {
+
+    @Test
+    public void empty() {
+
+        assertEquals(0, IntTrie.EMPTY.size());
+        assertEquals(0, IntTrie.EMPTY.get(42));
+    }
+
+    @Test
+    public void putAndRemove() {
+
+        final IntTrie.Editor editor = IntTrie.EMPTY.edit();
+
+        assertEquals(0, editor.put(1, 10));
+        assertEquals(10, editor.put(1, 11));
+        assertEquals(0, editor.put(-1, 12));
+        assertEquals(0, editor.remove(2));
+        assertEquals(11, editor.remove(1));
+
+        final IntTrie trie = editor.done();
+        assertEquals(1, trie.size());
+        assertEquals(0, trie.get(1));
+        assertEquals(12, trie.get(-1));
+    }
+
+    @Test
+    public void matchHashMap() {
+
+        final Random random = new Random(42);
+        final Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        final IntTrie.Editor editor = IntTrie.EMPTY.edit();
+        for (int i = 0; i < 100000; i++) {
+
+            final int key = random.nextInt(20000) - 10000;
+            if (random.nextInt(3) == 0) {
+
+                final Integer removed = expected.remove(key);
+                assertEquals(removed == null ? 0 : removed, editor.remove(key));
+            } else {
+
+                final int value = random.nextInt(100) + 1;
+                final Integer previous = expected.put(key, value);
+                assertEquals(previous == null ? 0 : previous, editor.put(key, value));
+            }
+        }
+
+        assertMatches(expected, editor.done());
+    }
+
+    @Test
+    public void keepPreviousVersions() {
+
+        final Random random = new Random(42);
+        final Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        final List<Map<Integer, Integer>> expectedVersions = new ArrayList<Map<Integer, Integer>>();
+        final List<IntTrie> versions = new ArrayList<IntTrie>();
+
+        IntTrie trie = IntTrie.EMPTY;
+        for (int version = 0; version < 50; version++) {
+
+            final IntTrie.Editor editor = trie.edit();
+            for (int i = 0; i < 200; i++) {
+
+                final int key = random.nextInt(5000);
+                if (random.nextBoolean()) {
+
+                    expected.remove(key);
+                    editor.remove(key);
+                } else {
+
+                    expected.put(key, version + 1);
+                    editor.put(key, version + 1);
+                }
+            }
+
+            trie = editor.done();
+            versions.add(trie);
+            expectedVersions.add(new HashMap<Integer, Integer>(expected));
+        }
+
+        for (int version = 0; version < versions.size(); version++) {
+
+            assertMatches(expectedVersions.get(version), versions.get(version));
+        }
+    }
+
+    @Test
+    public void editorIsReusable() {
+
+        final IntTrie.Editor editor = IntTrie.EMPTY.edit();
+        editor.put(1, 1);
+        final IntTrie first = editor.done();
+
+        editor.put(1, 2);
+        editor.put(2, 2);
+        final IntTrie second = editor.done();
+
+        assertEquals(1, first.size());
+        assertEquals(1, first.get(1));
+        assertEquals(2, second.size());
+        assertEquals(2, second.get(1));
+    }
+
+    @Test
+    public void sortedKeys() {
+
+        final IntTrie.Editor editor = IntTrie.EMPTY.edit();
+        for (final int key: new int[] {42, -7, 1000000, 3, 0}) {
+
+            editor.put(key, 1);
+        }
+
+        assertArrayEquals(new int[] {-7, 0, 3, 42, 1000000}, editor.done().keys());
+        assertArrayEquals(new int[0], IntTrie.EMPTY.keys());
+    }
+
+    private void assertMatches(final Map<Integer, Integer> expected, final IntTrie trie) {
+
+        assertEquals(expected.size(), trie.size());
+        for (final Map.Entry<Integer, Integer> entry: expected.entrySet()) {
+
+            assertEquals((int) entry.getValue(), trie.get(entry.getKey()));
+        }
+
+        final int[] keys = new int[trie.size()];
+        final int[] values = new int[keys.length];
+        trie.entries(keys, values);
+        for (int i = 0; i < keys.length; i++) {
+
+            assertEquals((int) expected.get(keys[i]), values[i]);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.labels.LabelAtom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class LabelMatchCacheTest {
+
+    private final LabelMatchCache cache = new LabelMatchCache();
+
+    private Node normal;
+    private Node exclusive;
+    private List<Node> nodes;
+
+    @Before
+    public void setUp() {
+
+        normal = node(Node.Mode.NORMAL);
+        exclusive = node(Node.Mode.EXCLUSIVE);
+        nodes = Arrays.asList(normal, exclusive);
+    }
+
+    @Test
+    public void matchLabelOnce() {
+
+        final Label label = label(exclusive);
+
+        final BitSet first = cache.matching(label, nodes);
+        final BitSet second = cache.matching(label, nodes);
+
+        assertEquals(bits(1), first);
+        assertEquals(first, second);
+        assertNotSame(first, second);
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void runUnlabeledItemsOnNormalNodes() {
+
+        assertEquals(bits(0), cache.matching(null, nodes));
+    }
+
+    @Test
+    public void doNotExposeCachedMatches() {
+
+        final Label label = label(normal, exclusive);
+
+        cache.matching(label, nodes).clear();
+
+        assertEquals(bits(0, 1), cache.matching(label, nodes));
+    }
+
+    @Test
+    public void rematchForNewNodes() {
+
+        final Label label = label(normal);
+
+        cache.matching(label, nodes);
+        assertEquals(bits(1), cache.matching(label, Arrays.asList(exclusive, normal)));
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void reuseMatchesForRecreatedNodeList() {
+
+        final Label label = label(normal);
+
+        cache.matching(label, nodes);
+        assertEquals(bits(0), cache.matching(label, new ArrayList<Node>(nodes)));
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void rematchOnceNodesChanged() {
+
+        final Label label = label(normal);
+
+        cache.matching(label, nodes);
+        cache.nodesChanged();
+        cache.matching(label, nodes);
+        assertEquals(2, cache.misses());
+    }
+
+    private Node node(final Node.Mode mode) {
+
+        final Node node = Mockito.mock(Node.class);
+        Mockito.when(node.getMode()).thenReturn(mode);
+        return node;
+    }
+
+    private Label label(final Node... nodes) {
+
+        final Set<Node> labeled = new HashSet<Node>(Arrays.asList(nodes));
+        return new LabelAtom("label") {
+
+            @Override
+            public Set<Node> getNodes() {
+
+                return labeled;
+            }
+        };
+    }
+
+    private BitSet bits(final int... indices) {
+
+        final BitSet bits = new BitSet();
+        for (final int index: indices) {
+
+            bits.set(index);
+        }
+
+        return bits;
+    }
+}
@@ -0,0 +1,601 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import hudson.model.Node;
+import hudson.model.labels.LabelAtom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class NodeAssignmentsTest {
+
+    @Test
+    public void lookup() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "slave")
+                .build()
+        ;
+
+        assertEquals("master", assignments.nodeName(1));
+        assertEquals("slave", assignments.nodeName(2));
+        assertNull(assignments.nodeName(3));
+        assertEquals(2, assignments.size());
+    }
+
+    @Test
+    public void reassign() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(1, "slave")
+                .build()
+        ;
+
+        assertEquals("slave", assignments.nodeName(1));
+        assertEquals(1, assignments.size());
+    }
+
+    @Test
+    public void empty() {
+
+        assertEquals(0, NodeAssignments.empty().size());
+        assertNull(NodeAssignments.empty().nodeName(0));
+        assertEquals(NodeAssignments.empty(), NodeAssignments.builder().build());
+    }
+
+    @Test
+    public void manyAssignments() {
+
+        final Map<Integer, String> expected = new HashMap<Integer, String>();
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        for (int id = -1000; id < 10000; id += 3) {
+
+            final String node = "slave" + (id % 17);
+            expected.put(id, node);
+            builder.assign(id, node);
+        }
+
+        final NodeAssignments assignments = builder.build();
+
+        assertEquals(expected.size(), assignments.size());
+        for (int id = -1001; id < 10001; id++) {
+
+            assertEquals(expected.get(id), assignments.nodeName(id));
+        }
+
+        assertEquals(31 * expected.hashCode() + 13, assignments.hashCode());
+    }
+
+    @Test
+    public void nodeHandles() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "slave")
+                .assign(3, "slave")
+                .build()
+        ;
+
+        final int master = assignments.nodeHandle("master");
+        final int slave = assignments.nodeHandle("slave");
+
+        assertFalse(master == slave);
+        assertEquals(master, assignments.assignedNode(1));
+        assertEquals(slave, assignments.assignedNode(2));
+        assertEquals(slave, assignments.assignedNode(3));
+
+        assertEquals(NodeAssignments.NOT_ASSIGNED, assignments.assignedNode(4));
+        assertEquals(NodeAssignments.NOT_ASSIGNED, assignments.nodeHandle("idle"));
+    }
+
+    @Test
+    public void resolveIdleNodesOnce() {
+
+        final NodeAssignments assignments = NodeAssignments.builder().assign(1, "slave").build();
+        final List<Node> nodes = new ArrayList<Node>();
+        for (int i = 0; i < 100; i++) {
+
+            nodes.add(node("idle" + i));
+        }
+
+        for (int round = 0; round < 3; round++) {
+
+            for (final Node node: nodes) {
+
+                assertEquals(NodeAssignments.NOT_ASSIGNED, assignments.nodeHandle(node));
+            }
+        }
+
+        for (final Node node: nodes) {
+
+            Mockito.verify(node, Mockito.times(1)).getSelfLabel();
+        }
+    }
+
+    @Test
+    public void resolveNodesAgainOnceReconfigured() {
+
+        final NodeAssignments assignments = NodeAssignments.builder().assign(1, "slave").build();
+        final Node slave = node("slave");
+
+        assertEquals(assignments.nodeHandle("slave"), assignments.nodeHandle(slave));
+        NodeAssignments.nodesReconfigured();
+        assertEquals(assignments.nodeHandle("slave"), assignments.nodeHandle(slave));
+
+        Mockito.verify(slave, Mockito.times(2)).getSelfLabel();
+    }
+
+    private Node node(final String name) {
+
+        final Node node = Mockito.mock(Node.class);
+        Mockito.when(node.getSelfLabel()).thenReturn(new LabelAtom(name));
+        return node;
+    }
+
+    @Test
+    public void itemsAssignedToNode() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(7, "slave")
+                .assign(1, "master")
+                .assign(3, "slave")
+                .assign(5, "slave")
+                .build()
+        ;
+
+        assertArrayEquals(new int[] {3, 5, 7}, assignments.assignedItems("slave"));
+        assertArrayEquals(new int[] {1}, assignments.assignedItems("master"));
+        assertArrayEquals(new int[0], assignments.assignedItems("idle"));
+
+        assertEquals(3, assignments.assignedCount("slave"));
+        assertEquals(1, assignments.assignedCount("master"));
+        assertEquals(0, assignments.assignedCount("idle"));
+    }
+
+    @Test
+    public void reassignedNodeHasNothingAssigned() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(1, "slave")
+                .build()
+        ;
+
+        assertEquals(0, assignments.assignedCount("master"));
+        assertArrayEquals(new int[] {1}, assignments.assignedItems("slave"));
+    }
+
+    @Test
+    public void indexFootprintIsBounded() {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        for (int id = 0; id < 10000; id++) {
+
+            builder.assign(id, "slave" + (id % 50));
+            // Reassignments do not grow the index
+            builder.assign(id, "slave" + (id % 100));
+        }
+
+        final NodeAssignments assignments = builder.build();
+
+        assertEquals(10000 + 100 + 1, assignments.indexFootprint());
+
+        int total = 0;
+        for (int node = 0; node < 100; node++) {
+
+            total += assignments.assignedCount("slave" + node);
+        }
+
+        assertEquals(assignments.size(), total);
+        assertEquals(1, NodeAssignments.empty().indexFootprint());
+    }
+
+    @Test
+    public void storeNodeNamesOnce() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, new String("slave"))
+                .assign(2, new String("slave"))
+                .build()
+        ;
+
+        assertSame(assignments.nodeName(1), assignments.nodeName(2));
+    }
+
+    @Test
+    public void equality() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "slave")
+                .build()
+        ;
+
+        final NodeAssignments same = NodeAssignments.builder()
+                .assign(2, "slave")
+                .assign(1, "master")
+                .build()
+        ;
+
+        assertEquals(assignments, same);
+        assertEquals(assignments.hashCode(), same.hashCode());
+
+        assertFalse(assignments.equals(NodeAssignments.builder().assign(1, "master").build()));
+        assertFalse(assignments.equals(NodeAssignments.builder().assign(1, "master").assign(2, "master").build()));
+        assertFalse(assignments.equals(NodeAssignments.builder().assign(1, "master").assign(3, "slave").build()));
+    }
+
+    @Test
+    public void builderIsNotShared() {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder().assign(1, "master");
+        final NodeAssignments assignments = builder.build();
+
+        builder.assign(2, "slave");
+
+        assertEquals(1, assignments.size());
+        assertNull(assignments.nodeName(2));
+    }
+
+    @Test
+    public void planOrder() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .order(3, 1)
+                .order(2)
+                .build()
+        ;
+
+        assertTrue(assignments.isOrdered());
+        assertTrue(assignments.rank(3) < assignments.rank(1));
+        assertTrue(assignments.rank(1) < assignments.rank(2));
+        assertEquals(NodeAssignments.NOT_RANKED, assignments.rank(4));
+
+        assertFalse(NodeAssignments.empty().isOrdered());
+        assertFalse(assignments.equals(NodeAssignments.builder().assign(1, "master").build()));
+    }
+
+    @Test
+    public void leaveItemsWaiting() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "slave")
+                .leaveWaiting(2, 3, 2)
+                .build()
+        ;
+
+        assertTrue(assignments.isWaiting(2));
+        assertTrue(assignments.isWaiting(3));
+        assertFalse(assignments.isWaiting(1));
+        assertArrayEquals(new int[] {2, 3}, assignments.waitingItems());
+
+        assertEquals(1, assignments.size());
+        assertNull(assignments.nodeName(2));
+        assertEquals(0, assignments.assignedCount("slave"));
+        assertFalse(assignments.equals(NodeAssignments.builder().assign(1, "master").build()));
+    }
+
+    @Test
+    public void waitingItemStaysUnassigned() {
+
+        final NodeAssignments base = NodeAssignments.builder()
+                .leaveWaiting(1)
+                .assign(1, "master")
+                .build()
+        ;
+
+        assertEquals(0, base.size());
+        assertArrayEquals(new int[] {1}, base.waitingItems());
+
+        final NodeAssignments derived = base.withAssigned(1, "slave").withAssigned(2, "slave");
+        assertEquals(1, derived.assignedCount("slave"));
+        assertTrue(derived.isWaiting(1));
+
+        final NodeAssignments assigned = derived.withRemoved(1).withAssigned(1, "slave");
+        assertEquals(2, assigned.assignedCount("slave"));
+        assertArrayEquals(new int[0], assigned.waitingItems());
+        assertArrayEquals(new int[] {1}, base.waitingItems());
+    }
+
+    @Test
+    public void assignCompleteGroups() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "slave")
+                .group(1, 2)
+                .build()
+        ;
+
+        assertEquals("master", assignments.nodeName(1));
+        assertEquals("slave", assignments.nodeName(2));
+        assertFalse(assignments.isGroupIncomplete(1));
+        assertArrayEquals(new int[0], assignments.waitingItems());
+    }
+
+    @Test
+    public void leaveIncompleteGroupsWaiting() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "slave")
+                .assign(4, "slave")
+                .assign(5, "slave")
+                .group(1, 2, 3)
+                .group(4, 5)
+                .leaveWaiting(5)
+                .build()
+        ;
+
+        assertEquals(0, assignments.size());
+        assertArrayEquals(new int[] {1, 2, 3, 4, 5}, assignments.waitingItems());
+        assertTrue(assignments.isGroupIncomplete(1));
+        assertTrue(assignments.isGroupIncomplete(3));
+        assertTrue(assignments.isGroupIncomplete(5));
+    }
+
+    @Test
+    public void dropGroupsSharingMembersWithIncompleteGroup() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "master")
+                .assign(3, "master")
+                .assign(5, "master")
+                .group(2, 3)
+                .group(1, 2)
+                .group(3, 4)
+                .build()
+        ;
+
+        assertEquals(1, assignments.size());
+        assertEquals("master", assignments.nodeName(5));
+        assertArrayEquals(new int[] {1, 2, 3, 4}, assignments.waitingItems());
+    }
+
+    @Test
+    public void deriveFromBase() {
+
+        final NodeAssignments base = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "slave")
+                .assign(3, "slave")
+                .order(3, 1)
+                .leaveWaiting(4)
+                .group(5, 6)
+                .build()
+        ;
+
+        final NodeAssignments derived = NodeAssignments.builder(base)
+                .unassign(2, 4, 5)
+                .assign(7, "master")
+                .order(7)
+                .build()
+        ;
+
+        assertEquals(3, derived.size());
+        assertNull(derived.nodeName(2));
+        assertEquals("master", derived.nodeName(7));
+        assertArrayEquals(new int[] {3}, derived.assignedItems("slave"));
+        assertTrue(derived.rank(3) < derived.rank(1));
+        assertTrue(derived.rank(1) < derived.rank(7));
+        assertArrayEquals(new int[] {6}, derived.waitingItems());
+        assertTrue(derived.isGroupIncomplete(6));
+
+        assertEquals(base, NodeAssignments.builder(base).build());
+    }
+
+    @Test
+    public void dropGroupOnceMemberIsUnassigned() {
+
+        final NodeAssignments base = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "slave")
+                .assign(3, "slave")
+                .group(1, 2)
+                .build()
+        ;
+
+        final NodeAssignments reassigned = base.withAssigned(1, "slave");
+        assertEquals(3, reassigned.assignedCount("slave"));
+
+        final NodeAssignments derived = reassigned.withRemoved(2);
+        assertEquals(1, derived.size());
+        assertEquals("slave", derived.nodeName(3));
+        assertArrayEquals(new int[] {1, 2}, derived.waitingItems());
+        assertTrue(derived.isGroupIncomplete(1));
+        assertTrue(derived.isGroupIncomplete(1));
+
+        final NodeAssignments waiting = NodeAssignments.builder(base).leaveWaiting(1).build();
+        assertArrayEquals(new int[] {1, 2}, waiting.waitingItems());
+    }
+
+    @Test
+    public void mergeNewGroupWithBaseGroup() {
+
+        final NodeAssignments base = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "master")
+                .group(1, 2)
+                .build()
+        ;
+
+        final NodeAssignments derived = NodeAssignments.builder(base).group(2, 3).build();
+        assertEquals(0, derived.size());
+        assertArrayEquals(new int[] {1, 2, 3}, derived.waitingItems());
+    }
+
+    @Test
+    public void keepRestOfGroupOnceMemberIsForgotten() {
+
+        final NodeAssignments base = NodeAssignments.builder()
+                .assign(1, "master")
+                .assign(2, "master")
+                .assign(3, "slave")
+                .group(1, 2, 3)
+                .build()
+        ;
+
+        final NodeAssignments started = NodeAssignments.builder(base).forget(1).build();
+        assertEquals(2, started.size());
+        assertArrayEquals(new int[0], started.waitingItems());
+
+        final NodeAssignments unassigned = started.withRemoved(3);
+        assertEquals(0, unassigned.size());
+        assertArrayEquals(new int[] {2, 3}, unassigned.waitingItems());
+
+        final NodeAssignments alone = NodeAssignments.builder(started).forget(2).build().withRemoved(1);
+        assertEquals("slave", alone.nodeName(3));
+    }
+
+    @Test
+    public void unassignManyItems() {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        final Map<Integer, String> expected = new HashMap<Integer, String>();
+        for (int id = 0; id < 5000; id++) {
+
+            builder.assign(id, "node" + id % 7);
+            expected.put(id, "node" + id % 7);
+        }
+
+        for (int id = 0; id < 5000; id += 3) {
+
+            builder.unassign(id);
+            expected.remove(id);
+        }
+
+        final NodeAssignments assignments = builder.unassign(-1).build();
+        assertEquals(expected.size(), assignments.size());
+        for (int id = 0; id < 5000; id++) {
+
+            assertEquals(expected.get(id), assignments.nodeName(id));
+        }
+    }
+
+    @Test
+    public void patchKeepsOriginal() {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        for (int id = 0; id < 1000; id++) {
+
+            builder.assign(id, "node" + id % 3);
+        }
+        final NodeAssignments original = builder.build();
+
+        final NodeAssignments assigned = original.withAssigned(1000, "node0").withAssigned(1, "node0");
+        final NodeAssignments removed = assigned.withRemoved(2).withRemoved(1001);
+
+        assertEquals(1000, original.size());
+        assertEquals("node1", original.nodeName(1));
+        assertNull(original.nodeName(1000));
+        assertEquals(334, original.assignedCount("node0"));
+
+        assertEquals(1001, assigned.size());
+        assertEquals("node0", assigned.nodeName(1));
+        assertEquals("node0", assigned.nodeName(1000));
+        assertEquals(336, assigned.assignedCount("node0"));
+        assertEquals(332, assigned.assignedCount("node1"));
+
+        assertEquals(1000, removed.size());
+        assertNull(removed.nodeName(2));
+        assertEquals(332, removed.assignedCount("node2"));
+        assertEquals(332, removed.assignedItems("node2").length);
+
+        assertEquals(original, removed.withAssigned(1, "node1").withAssigned(2, "node2").withRemoved(1000));
+    }
+
+    @Test
+    public void patchAddsNodes() {
+
+        final NodeAssignments original = NodeAssignments.builder().assign(1, "master").build();
+        final NodeAssignments patched = original.withAssigned(2, "slave");
+
+        assertEquals(NodeAssignments.NOT_ASSIGNED, original.nodeHandle("slave"));
+        assertEquals(1, patched.assignedCount("slave"));
+        assertEquals(patched.nodeHandle("master"), patched.assignedNode(1));
+    }
+
+    @Test
+    public void forgetItems() {
+
+        final NodeAssignments.Builder builder = NodeAssignments.builder();
+        for (int id = 0; id < 100; id++) {
+
+            builder.assign(id, "master").order(id);
+        }
+        final NodeAssignments base = builder.leaveWaiting(100, 101).order(102).build();
+
+        final NodeAssignments.Builder forgetting = NodeAssignments.builder(base);
+        for (int id = 0; id < 100; id += 2) {
+
+            forgetting.forget(id);
+        }
+        final NodeAssignments forgotten = forgetting.forget(100, 102).build();
+
+        assertEquals(50, forgotten.size());
+        assertEquals(NodeAssignments.NOT_RANKED, forgotten.rank(2));
+        assertTrue(forgotten.rank(1) < forgotten.rank(3));
+        assertEquals(99, base.rank(99));
+        assertArrayEquals(new int[] {101}, forgotten.waitingItems());
+        assertEquals(base.plannedItems().length - 52, forgotten.plannedItems().length);
+    }
+
+    @Test
+    public void plannedItems() {
+
+        final NodeAssignments assignments = NodeAssignments.builder()
+                .assign(3, "master")
+                .assign(1, "slave")
+                .leaveWaiting(2, 3)
+                .order(4, 1)
+                .build()
+        ;
+
+        assertArrayEquals(new int[] {1, 2, 3, 4}, assignments.plannedItems());
+        assertArrayEquals(new int[0], NodeAssignments.empty().plannedItems());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void doNotAssignToNullNode() {
+
+        NodeAssignments.builder().assign(1, null);
+    }
+}
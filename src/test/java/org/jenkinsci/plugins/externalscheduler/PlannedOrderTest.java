@@ -0,0 +1,134 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import hudson.model.Queue;
+import hudson.model.queue.QueueSorter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Queue.class, Queue.BuildableItem.class})
+public class PlannedOrderTest {
+
+    @Test
+    public void sortRankedItemsFirst() {
+
+        final List<Queue.BuildableItem> items = items(1, 2, 3, 4);
+
+        PlannedOrder.sort(items, NodeAssignments.builder().order(3, 1).build());
+
+        assertEquals(Arrays.asList(3, 1, 2, 4), ids(items));
+    }
+
+    @Test
+    public void keepOrderWhenNothingIsRanked() {
+
+        final List<Queue.BuildableItem> items = items(4, 2, 3);
+
+        PlannedOrder.sort(items, NodeAssignments.builder().assign(3, "master").build());
+
+        assertEquals(Arrays.asList(4, 2, 3), ids(items));
+    }
+
+    @Test
+    public void sortByReplacedSorterFirst() {
+
+        final List<Queue.BuildableItem> items = items(1, 2, 3, 4);
+
+        new PlannedOrder(reversing()).sortBuildableItems(items);
+
+        assertEquals(Arrays.asList(4, 3, 2, 1), ids(items));
+    }
+
+    @Test
+    public void installOnlyWhileOrdering() {
+
+        final QueueSorter original = reversing();
+        final Queue queue = PowerMockito.mock(Queue.class);
+        Mockito.when(queue.getSorter()).thenReturn(original);
+
+        PlannedOrder.use(queue, false);
+        Mockito.verify(queue, Mockito.never()).setSorter(Mockito.any(QueueSorter.class));
+
+        PlannedOrder.use(queue, true);
+        final ArgumentCaptor<QueueSorter> installed = ArgumentCaptor.forClass(QueueSorter.class);
+        Mockito.verify(queue).setSorter(installed.capture());
+        assertSame(original, ((PlannedOrder) installed.getValue()).replaced());
+
+        Mockito.when(queue.getSorter()).thenReturn(installed.getValue());
+        PlannedOrder.use(queue, false);
+        Mockito.verify(queue).setSorter(original);
+    }
+
+    private QueueSorter reversing() {
+
+        return new QueueSorter() {
+
+            @Override
+            public void sortBuildableItems(final List<Queue.BuildableItem> items) {
+
+                Collections.reverse(items);
+            }
+        };
+    }
+
+    private List<Queue.BuildableItem> items(final int... ids) {
+
+        final List<Queue.BuildableItem> items = new ArrayList<Queue.BuildableItem>();
+        for (final int id: ids) {
+
+            final Queue.BuildableItem item = PowerMockito.mock(Queue.BuildableItem.class);
+            Whitebox.setInternalState(item, "id", id);
+            items.add(item);
+        }
+
+        return items;
+    }
+
+    private List<Integer> ids(final List<Queue.BuildableItem> items) {
+
+        final List<Integer> ids = new ArrayList<Integer>();
+        for (final Queue.BuildableItem item: items) {
+
+            ids.add(item.id);
+        }
+
+        return ids;
+    }
+}
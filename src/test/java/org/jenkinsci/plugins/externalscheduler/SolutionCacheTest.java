@@ -0,0 +1,429 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SolutionCacheTest {
+
+    private static final long STALENESS = 30000;
+
+    private static final StateProvider STATE = new StateProviderMock(
+            Collections.<Queue.BuildableItem>emptyList(), Collections.<Node>emptyList()
+    );
+
+    private static final Executor DIRECT = new Executor() {
+
+        public void execute(final Runnable command) {
+
+            command.run();
+        }
+    };
+
+    private SolutionCache cache;
+    private CountingScheduler scheduler;
+
+    @Before
+    public void setUp() {
+
+        cache = new SolutionCache(new SolutionRefresher(DIRECT));
+        scheduler = new CountingScheduler(NodeAssignments.builder().assign(42, "slave").build());
+    }
+
+    @Test
+    public void computeSolutionOnce() {
+
+        final NodeAssignments first = cache.solution(scheduler, STATE, STALENESS);
+        for (int i = 0; i < 100; i++) {
+
+            assertSame(first, cache.solution(scheduler, STATE, STALENESS));
+        }
+
+        assertEquals(1, scheduler.invocations);
+        assertEquals(1, cache.misses());
+        assertEquals(100, cache.hits());
+    }
+
+    @Test
+    public void recomputeWhenInvalidated() {
+
+        cache.solution(scheduler, STATE, STALENESS);
+        cache.invalidate();
+        cache.solution(scheduler, STATE, STALENESS);
+        cache.solution(scheduler, STATE, STALENESS);
+
+        assertEquals(2, scheduler.invocations);
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.version());
+    }
+
+    @Test
+    public void recomputeWhenSchedulerChanges() {
+
+        cache.solution(scheduler, STATE, STALENESS);
+
+        final CountingScheduler other = new CountingScheduler(NodeAssignments.empty());
+        assertSame(NodeAssignments.empty(), cache.solution(other, STATE, STALENESS));
+
+        assertEquals(1, scheduler.invocations);
+        assertEquals(1, other.invocations);
+    }
+
+    @Test
+    public void cacheMissingSolution() {
+
+        final CountingScheduler disabled = new CountingScheduler(null);
+
+        assertNull(cache.solution(disabled, STATE, STALENESS));
+        assertNull(cache.solution(disabled, STATE, STALENESS));
+
+        assertEquals(1, disabled.invocations);
+    }
+
+    @Test
+    public void serveOutdatedSolutionWhileRefreshing() {
+
+        final DeferredExecutor executor = new DeferredExecutor();
+        cache = new SolutionCache(new SolutionRefresher(executor));
+
+        assertNull(cache.solution(scheduler, STATE, STALENESS));
+        assertEquals(0, scheduler.invocations);
+
+        executor.runPending();
+        final NodeAssignments first = cache.solution(scheduler, STATE, STALENESS);
+        assertSame(scheduler.solution, first);
+
+        cache.invalidate();
+        assertSame(first, cache.solution(scheduler, STATE, STALENESS));
+        assertSame(first, cache.solution(scheduler, STATE, STALENESS));
+
+        // Only one refresh requested while in progress
+        assertEquals(1, executor.pending.size());
+        executor.runPending();
+
+        assertEquals(2, scheduler.invocations);
+        assertEquals(2, cache.refresher().refreshes());
+    }
+
+    @Test
+    public void fallBackToDefaultSchedulingWhenTooStale() throws InterruptedException {
+
+        final DeferredExecutor executor = new DeferredExecutor();
+        cache = new SolutionCache(new SolutionRefresher(executor));
+
+        cache.solution(scheduler, STATE, STALENESS);
+        executor.runPending();
+        cache.invalidate();
+
+        Thread.sleep(5);
+
+        assertNull(cache.solution(scheduler, STATE, 1));
+        assertTrue(cache.solutionAge() >= 1);
+    }
+
+    @Test
+    public void recordFailures() {
+
+        final Scheduler failing = new Scheduler() {
+
+            @Override
+            public NodeAssignments solution() {
+
+                throw new IllegalStateException("Planner down");
+            }
+        };
+
+        assertNull(cache.solution(failing, STATE, STALENESS));
+        assertEquals(1, cache.refresher().failures());
+        assertEquals(0, cache.refresher().refreshes());
+        assertEquals(-1, cache.solutionAge());
+    }
+
+    @Test
+    public void abandonSlowScheduler() {
+
+        final ExecutorService calls = Executors.newCachedThreadPool();
+        final CountDownLatch released = new CountDownLatch(1);
+        final Scheduler hanging = new Scheduler() {
+
+            @Override
+            public NodeAssignments solution() {
+
+                try {
+
+                    released.await();
+                } catch (final InterruptedException ex) {
+
+                    // abandoned
+                }
+
+                return NodeAssignments.empty();
+            }
+        };
+
+        try {
+
+            cache = new SolutionCache(new SolutionRefresher(DIRECT, calls, 50, new CircuitBreaker()));
+
+            assertNull(cache.solution(hanging, STATE, STALENESS));
+            assertEquals(1, cache.refresher().timeouts());
+            assertEquals(1, cache.refresher().failures());
+            assertEquals(-1, cache.solutionAge());
+        } finally {
+
+            released.countDown();
+            calls.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectCallsWhileAllThreadsHang() {
+
+        final ExecutorService calls = SolutionRefresher.calls(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final AtomicInteger invocations = new AtomicInteger();
+        final Scheduler hanging = new Scheduler() {
+
+            @Override
+            public NodeAssignments solution() {
+
+                invocations.incrementAndGet();
+                while (released.getCount() > 0) {
+
+                    try {
+
+                        released.await();
+                    } catch (final InterruptedException ex) {
+
+                        // Ignore interruption the way blocking I/O does
+                    }
+                }
+
+                return NodeAssignments.empty();
+            }
+        };
+
+        try {
+
+            cache = new SolutionCache(new SolutionRefresher(DIRECT, calls, 50, new CircuitBreaker(10, STALENESS)));
+
+            assertNull(cache.solution(hanging, STATE, STALENESS));
+            cache.invalidate();
+            assertNull(cache.solution(hanging, STATE, STALENESS));
+
+            assertEquals(1, invocations.get());
+            assertEquals(1, cache.refresher().timeouts());
+            assertEquals(2, cache.refresher().failures());
+        } finally {
+
+            released.countDown();
+            calls.shutdownNow();
+        }
+    }
+
+    @Test
+    public void doNotCallSchedulerWhileItsCallIsAbandoned() {
+
+        final ExecutorService calls = SolutionRefresher.calls(2);
+        final CountDownLatch released = new CountDownLatch(1);
+        final AtomicInteger invocations = new AtomicInteger();
+        final Scheduler hanging = new Scheduler() {
+
+            @Override
+            public NodeAssignments solution() {
+
+                invocations.incrementAndGet();
+                while (released.getCount() > 0) {
+
+                    try {
+
+                        released.await();
+                    } catch (final InterruptedException ex) {
+
+                        // Ignore interruption the way blocking I/O does
+                    }
+                }
+
+                return NodeAssignments.empty();
+            }
+        };
+
+        try {
+
+            cache = new SolutionCache(new SolutionRefresher(DIRECT, calls, 50, new CircuitBreaker(10, STALENESS)));
+
+            assertNull(cache.solution(hanging, STATE, STALENESS));
+            cache.invalidate();
+            assertNull(cache.solution(hanging, STATE, STALENESS));
+
+            assertEquals(1, invocations.get());
+            assertEquals(2, cache.refresher().failures());
+
+            // Other scheduler can use the free thread
+            assertSame(scheduler.solution, cache.solution(scheduler, STATE, STALENESS));
+        } finally {
+
+            released.countDown();
+            calls.shutdownNow();
+        }
+    }
+
+    @Test
+    public void recordErrorAsFailure() {
+
+        final Scheduler broken = new Scheduler() {
+
+            @Override
+            public NodeAssignments solution() {
+
+                throw new ExceptionInInitializerError("Broken scheduler");
+            }
+        };
+
+        cache = new SolutionCache(new SolutionRefresher(DIRECT, null, STALENESS, new CircuitBreaker(1, STALENESS)));
+        try {
+
+            cache.solution(broken, STATE, STALENESS);
+            fail("Error should propagate");
+        } catch (final ExceptionInInitializerError ex) {
+
+            // expected
+        }
+
+        assertEquals(1, cache.refresher().failures());
+        assertEquals(CircuitBreaker.State.OPEN, cache.refresher().breaker().state());
+    }
+
+    @Test
+    public void serveLastGoodSolutionWhileBreakerIsOpen() {
+
+        cache = new SolutionCache(new SolutionRefresher(DIRECT, null, STALENESS, new CircuitBreaker(2, STALENESS)));
+
+        final NodeAssignments good = cache.solution(scheduler, STATE, STALENESS);
+        scheduler.failing = true;
+
+        for (int i = 0; i < 5; i++) {
+
+            cache.invalidate();
+            assertSame(good, cache.solution(scheduler, STATE, STALENESS));
+        }
+
+        assertEquals(3, scheduler.invocations);
+        assertEquals(2, cache.refresher().failures());
+        assertEquals(CircuitBreaker.State.OPEN, cache.refresher().breaker().state());
+        assertEquals(3, cache.refresher().breaker().rejected());
+    }
+
+    @Test
+    public void planWholeQueueFromSingleSnapshot() {
+
+        final List<Queue.BuildableItem> queue = new ArrayList<Queue.BuildableItem>();
+        final List<Node> nodes = new ArrayList<Node>();
+        final List<Object> seen = new ArrayList<Object>();
+
+        final Scheduler batch = new Scheduler() {
+
+            @Override
+            public NodeAssignments solution() {
+
+                throw new AssertionError("Batch solution expected");
+            }
+
+            @Override
+            public NodeAssignments solution(final List<Queue.BuildableItem> queue, final List<Node> nodes) {
+
+                seen.add(queue);
+                seen.add(nodes);
+                return NodeAssignments.empty();
+            }
+        };
+
+        assertSame(
+                NodeAssignments.empty(),
+                cache.solution(batch, new StateProviderMock(queue, nodes), STALENESS)
+        );
+        assertEquals(Arrays.<Object>asList(queue, nodes), seen);
+    }
+
+    private static final class DeferredExecutor implements Executor {
+
+        private final List<Runnable> pending = new ArrayList<Runnable>();
+
+        public void execute(final Runnable command) {
+
+            pending.add(command);
+        }
+
+        private void runPending() {
+
+            final List<Runnable> running = new ArrayList<Runnable>(pending);
+            pending.clear();
+            for (final Runnable command: running) {
+
+                command.run();
+            }
+        }
+    }
+
+    private static final class CountingScheduler extends Scheduler {
+
+        private final NodeAssignments solution;
+        private int invocations = 0;
+        private boolean failing = false;
+
+        private CountingScheduler(final NodeAssignments solution) {
+
+            this.solution = solution;
+        }
+
+        @Override
+        public NodeAssignments solution() {
+
+            invocations++;
+            if (failing) throw new IllegalStateException("Planner down");
+
+            return solution;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.externalscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jenkinsci.plugins.externalscheduler.StateTracker.NodeStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateTrackerTest {
+
+    private StateTracker tracker;
+
+    @Before
+    public void setUp() {
+
+        tracker = new StateTracker(5);
+    }
+
+    @Test
+    public void initialStateIsReportedAsAdditions() {
+
+        final long version = tracker.update(items(1, 2), nodes("slave", NodeStatus.READY));
+
+        final StateDelta delta = tracker.changesSince(0);
+
+        assertTrue(delta.isComplete());
+        assertEquals(version, delta.version());
+        assertChanges(delta, "ITEM_ADDED:1", "ITEM_ADDED:2", "NODE_ONLINE:slave");
+    }
+
+    @Test
+    public void reportOnlyChanges() {
+
+        final long version = tracker.update(items(1, 2), nodes("slave", NodeStatus.READY));
+        tracker.update(items(2, 3), nodes("slave", NodeStatus.READY));
+
+        assertChanges(tracker.changesSince(version), "ITEM_REMOVED:1", "ITEM_ADDED:3");
+    }
+
+    @Test
+    public void reportNoChanges() {
+
+        final long version = tracker.update(items(1), nodes("slave", NodeStatus.READY));
+
+        assertEquals(version, tracker.update(items(1), nodes("slave", NodeStatus.READY)));
+        assertChanges(tracker.changesSince(version));
+    }
+
+    @Test
+    public void nodeTransitions() {
+
+        long version = tracker.update(items(), nodes("slave", NodeStatus.READY));
+
+        version = assertTransition(version, nodes("slave", NodeStatus.NOT_ACCEPTING), "NODE_NOT_ACCEPTING_TASKS:slave");
+        version = assertTransition(version, nodes("slave", NodeStatus.READY), "NODE_ACCEPTING_TASKS:slave");
+        version = assertTransition(version, nodes("slave", NodeStatus.OFFLINE), "NODE_OFFLINE:slave");
+        version = assertTransition(version, nodes("slave", NodeStatus.NOT_ACCEPTING), "NODE_ONLINE:slave", "NODE_NOT_ACCEPTING_TASKS:slave");
+        version = assertTransition(version, nodes(), "NODE_OFFLINE:slave");
+    }
+
+    private long assertTransition(final long since, final Map<String, NodeStatus> nodes, final String... changes) {
+
+        final long version = tracker.update(items(), nodes);
+        assertChanges(tracker.changesSince(since), changes);
+        return version;
+    }
+
+    @Test
+    public void recordItemsLeavingQueue() {
+
+        final long version = tracker.update(items(1, 2), nodes());
+
+        tracker.itemLeft(1);
+        tracker.itemLeft(1);
+        tracker.itemLeft(3);
+
+        assertChanges(tracker.changesSince(version), "ITEM_REMOVED:1");
+        assertEquals(version + 1, tracker.update(items(2), nodes()));
+    }
+
+    @Test
+    public void requireResyncWhenChangesAreNotRetained() {
+
+        tracker.update(items(1, 2, 3, 4, 5, 6), nodes());
+
+        final StateDelta delta = tracker.changesSince(0);
+        assertFalse(delta.isComplete());
+        assertEquals(6, delta.version());
+        assertChanges(delta);
+
+        assertTrue(tracker.changesSince(1).isComplete());
+        assertEquals(5, tracker.changesSince(1).changes().size());
+    }
+
+    @Test
+    public void requireResyncForUnknownVersion() {
+
+        tracker.update(items(1), nodes());
+
+        assertFalse(tracker.changesSince(42).isComplete());
+    }
+
+    private void assertChanges(final StateDelta delta, final String... expected) {
+
+        final List<StateDelta.Change> changes = delta.changes();
+        assertEquals(Arrays.asList(expected).toString(), changes.toString());
+    }
+
+    private Set<Integer> items(final Integer... ids) {
+
+        return new HashSet<Integer>(Arrays.asList(ids));
+    }
+
+    private Map<String, NodeStatus> nodes() {
+
+        return new HashMap<String, NodeStatus>();
+    }
+
+    private Map<String, NodeStatus> nodes(final String name, final NodeStatus status) {
+
+        final Map<String, NodeStatus> nodes = nodes();
+        nodes.put(name, status);
+        return nodes;
+    }
+}
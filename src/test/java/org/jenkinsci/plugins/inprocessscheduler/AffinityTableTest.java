@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import hudson.XmlFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class AffinityTableTest {
+
+    private final AffinityTable table = new AffinityTable(2, 2, null);
+
+    @Test
+    public void keepMostRecentNodes() {
+
+        table.built("job", "a");
+        table.built("job", "b");
+        table.built("job", "c");
+        assertEquals(Arrays.asList("c", "b"), table.recentNodes("job"));
+
+        table.built("job", "b");
+        assertEquals(Arrays.asList("b", "c"), table.recentNodes("job"));
+        assertTrue(table.recentNodes("unknown").isEmpty());
+    }
+
+    @Test
+    public void evictLeastRecentlyBuiltJobs() {
+
+        table.built("first", "a");
+        table.built("second", "a");
+        table.built("first", "b");
+        table.built("third", "a");
+
+        assertEquals(2, table.size());
+        assertTrue(table.recentNodes("second").isEmpty());
+        assertEquals(Arrays.asList("b", "a"), table.recentNodes("first"));
+    }
+
+    @Test
+    public void reportHitRate() {
+
+        table.built("job", "a");
+        table.built("job", "a");
+        table.built("job", "b");
+        table.built("job", "a");
+
+        assertEquals(2, table.warmBuilds());
+        assertEquals(2, table.coldBuilds());
+        assertEquals(0.5, table.hitRate(), 0.001);
+    }
+
+    @Test
+    public void persistAcrossRestart() throws IOException {
+
+        final File file = File.createTempFile("affinity", ".xml");
+        file.deleteOnExit();
+
+        final AffinityTable saved = AffinityTable.load(new XmlFile(file));
+        saved.built("first", "a");
+        saved.built("second", "b");
+        saved.built("second", "a");
+        saved.saveIfDue(AffinityTable.SAVE_INTERVAL);
+
+        final AffinityTable loaded = AffinityTable.load(new XmlFile(file));
+        assertEquals(Arrays.asList("a"), loaded.recentNodes("first"));
+        assertEquals(Arrays.asList("a", "b"), loaded.recentNodes("second"));
+    }
+
+    @Test
+    public void saveChangesMadeSinceLastSave() throws IOException {
+
+        final File file = File.createTempFile("affinity", ".xml");
+        file.deleteOnExit();
+
+        final AffinityTable saved = AffinityTable.load(new XmlFile(file));
+        saved.built("first", "a");
+        saved.saveIfDue(AffinityTable.SAVE_INTERVAL);
+        saved.built("first", "b");
+        saved.saveIfDue(AffinityTable.SAVE_INTERVAL + 1);
+        saved.save();
+
+        final AffinityTable loaded = AffinityTable.load(new XmlFile(file));
+        assertEquals(Arrays.asList("b", "a"), loaded.recentNodes("first"));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+import org.jenkinsci.plugins.externalscheduler.ItemMock;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.NodeMockFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Node.class, Computer.class, Queue.BuildableItem.class})
+public class BinPackingSchedulerTest {
+
+    private final NodeMockFactory nodeFactory = new NodeMockFactory();
+
+    @Test
+    public void respectLabelsAndFreeExecutors() {
+
+        final Node a = nodeFactory.node("a", 2, 1);
+        final Node b = nodeFactory.node("b", 2, 0);
+        final Node c = nodeFactory.node("c", 2, 2);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        queue.add(ItemMock.create(set(a, b), 1, "first", 1));
+        queue.add(ItemMock.create(set(a, b), 2, "second", 2));
+        queue.add(ItemMock.create(set(b), 3, "third", 3));
+
+        final NodeAssignments solution = new BinPackingScheduler().solution(queue, Arrays.asList(a, b, c));
+
+        assertEquals("a", solution.nodeName(1));
+        assertNull(solution.nodeName(2));
+        assertNull(solution.nodeName(3));
+        assertEquals(0, solution.assignedCount("c"));
+    }
+
+    @Test
+    public void balanceLoad() {
+
+        final Node a = nodeFactory.node("a", 3, 3);
+        final Node b = nodeFactory.node("b", 3, 3);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        for (int id = 1; id <= 4; id++) {
+
+            queue.add(ItemMock.create(set(a, b), id, "item" + id, id));
+        }
+
+        final NodeAssignments solution = new BinPackingScheduler().solution(queue, Arrays.asList(a, b));
+
+        assertEquals(2, solution.assignedCount("a"));
+        assertEquals(2, solution.assignedCount("b"));
+        assertEquals("a", solution.nodeName(1));
+        assertEquals("b", solution.nodeName(2));
+    }
+
+    @Test
+    public void preferFasterNodes() {
+
+        final Node slow = nodeFactory.node("slow", 3, 3);
+        final Node fast = nodeFactory.node("fast", 3, 3);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        for (int id = 1; id <= 3; id++) {
+
+            queue.add(ItemMock.create(set(slow, fast), id, "item" + id, id));
+        }
+
+        final Weights weights = new Weights() {
+
+            public double speed(final Node node) {
+
+                return node == fast ? 2.5 : 1;
+            }
+
+            public double cost(final Queue.BuildableItem item) {
+
+                return 1;
+            }
+        };
+
+        final NodeAssignments solution = new BinPackingScheduler(weights).solution(queue, Arrays.asList(slow, fast));
+
+        assertEquals("fast", solution.nodeName(1));
+        assertEquals("fast", solution.nodeName(2));
+        assertEquals("slow", solution.nodeName(3));
+    }
+
+    private SortedSet<Node> set(final Node... nodes) {
+
+        final SortedSet<Node> set = nodeFactory.set();
+        set.addAll(Arrays.asList(nodes));
+        return set;
+    }
+}
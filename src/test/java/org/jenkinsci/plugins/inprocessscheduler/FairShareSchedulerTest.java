@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import hudson.model.Computer;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+
+import org.jenkinsci.plugins.externalscheduler.ItemMock;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.NodeMockFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Node.class, Computer.class, Queue.BuildableItem.class})
+public class FairShareSchedulerTest {
+
+    private final NodeMockFactory nodeFactory = new NodeMockFactory();
+
+    private final Weights weights = new Weights() {
+
+        public double speed(final Node node) {
+
+            return 1;
+        }
+
+        public double cost(final Queue.BuildableItem item) {
+
+            return 1000;
+        }
+    };
+
+    private UsageLedger ledger;
+    private Node node;
+    private List<Queue.BuildableItem> queue;
+
+    @Before
+    public void setUp() {
+
+        ledger = new UsageLedger(UsageLedger.HALF_LIFE);
+        node = nodeFactory.node("slave", 4, 4);
+
+        // Burst of one team queued before the other team
+        queue = ItemMock.list();
+        for (int id = 1; id <= 10; id++) {
+
+            queue.add(item(id, "burst"));
+        }
+        queue.add(item(11, "small"));
+        queue.add(item(12, "small"));
+    }
+
+    @Test
+    public void interleaveTeams() {
+
+        final NodeAssignments solution = scheduler("").solution(queue, Arrays.asList(node));
+
+        assertEquals(Arrays.asList(1, 11, 2, 12, 3, 4), planned(solution, 6));
+        assertEquals("slave", solution.nodeName(11));
+        assertEquals("slave", solution.nodeName(12));
+        assertEquals(4, solution.assignedCount("slave"));
+    }
+
+    @Test
+    public void respectShares() {
+
+        final NodeAssignments solution = scheduler("burst=2\nsmall = 1\n").solution(queue, Arrays.asList(node));
+
+        assertEquals(Arrays.asList(1, 11, 2, 3, 12), planned(solution, 5));
+    }
+
+    @Test
+    public void considerConsumedExecutorTime() {
+
+        ledger.record("burst", 5);
+
+        final NodeAssignments solution = scheduler("").solution(queue, Arrays.asList(node));
+
+        assertEquals(Arrays.asList(11, 12, 1, 2), planned(solution, 4));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInvalidShares() {
+
+        scheduler("team=none");
+    }
+
+    @Test
+    public void reportInvalidShares() {
+
+        assertNull(FairShareScheduler.Descriptor.check("team=2\nother=0.5"));
+        assertEquals("Team share must be positive: team=0", FairShareScheduler.Descriptor.check("team=0"));
+    }
+
+    private FairShareScheduler scheduler(final String shares) {
+
+        return new FairShareScheduler(shares, weights, ledger);
+    }
+
+    /**
+     * Ids of first items in planned order
+     */
+    private List<Integer> planned(final NodeAssignments solution, final int count) {
+
+        final List<Queue.BuildableItem> sorted = new ArrayList<Queue.BuildableItem>(queue);
+        Collections.sort(sorted, new Comparator<Queue.BuildableItem>() {
+
+            public int compare(final Queue.BuildableItem lhs, final Queue.BuildableItem rhs) {
+
+                return solution.rank(lhs.id) - solution.rank(rhs.id);
+            }
+        });
+
+        final List<Integer> ids = new ArrayList<Integer>();
+        for (final Queue.BuildableItem item: sorted.subList(0, count)) {
+
+            ids.add(item.id);
+        }
+
+        return ids;
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private Queue.BuildableItem item(final int id, final String team) {
+
+        final SortedSet<Node> nodes = nodeFactory.set();
+        nodes.add(node);
+        final Queue.BuildableItem item = ItemMock.create(nodes, id, "item" + id, id);
+
+        final ItemGroup<?> folder = mock(ItemGroup.class);
+        when(folder.getFullName()).thenReturn(team);
+
+        final Queue.Task task = mock(Queue.Task.class, withSettings().extraInterfaces(Item.class));
+        when(task.getDisplayName()).thenReturn("item" + id);
+        when(((Item) task).getParent()).thenReturn((ItemGroup) folder);
+        Whitebox.setInternalState(item, "task", task);
+
+        return item;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+import hudson.model.Computer;
+import hudson.model.Item;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+import org.jenkinsci.plugins.externalscheduler.ItemMock;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.NodeMockFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Node.class, Computer.class, Queue.BuildableItem.class})
+public class LocalitySchedulerTest {
+
+    private final NodeMockFactory nodeFactory = new NodeMockFactory();
+
+    private final Weights weights = new Weights() {
+
+        public double speed(final Node node) {
+
+            return 1;
+        }
+
+        public double cost(final Queue.BuildableItem item) {
+
+            return 1000;
+        }
+    };
+
+    private AffinityTable affinity;
+    private LocalityScheduler scheduler;
+
+    @Before
+    public void setUp() {
+
+        affinity = new AffinityTable(10, 3, null);
+        affinity.built("job", "warm");
+        scheduler = new LocalityScheduler(weights, affinity);
+    }
+
+    @Test
+    public void preferWarmNode() {
+
+        final Node cold = nodeFactory.node("cold", 2, 2);
+        final Node warm = nodeFactory.node("warm", 2, 2);
+
+        final NodeAssignments solution = scheduler.solution(queue(cold, warm, 1), Arrays.asList(cold, warm));
+
+        assertEquals("warm", solution.nodeName(1));
+        assertEquals(1, affinity.plannedWarm());
+        assertEquals(0, affinity.plannedCold());
+    }
+
+    @Test
+    public void fallBackWhenWarmNodeIsFull() {
+
+        final Node cold = nodeFactory.node("cold", 2, 2);
+        final Node warm = nodeFactory.node("warm", 1, 1);
+
+        final NodeAssignments solution = scheduler.solution(queue(cold, warm, 2), Arrays.asList(cold, warm));
+
+        assertEquals("warm", solution.nodeName(1));
+        assertEquals("cold", solution.nodeName(2));
+        assertEquals(1, affinity.plannedWarm());
+        assertEquals(1, affinity.plannedCold());
+    }
+
+    @Test
+    public void countPlannedItemOnce() {
+
+        final Node cold = nodeFactory.node("cold", 2, 2);
+        final Node warm = nodeFactory.node("warm", 2, 2);
+        final List<Queue.BuildableItem> queue = queue(cold, warm, 1);
+
+        scheduler.solution(queue, Arrays.asList(cold, warm));
+        scheduler.solution(queue, Arrays.asList(cold, warm));
+
+        assertEquals(1, affinity.plannedWarm());
+    }
+
+    private List<Queue.BuildableItem> queue(final Node cold, final Node warm, final int count) {
+
+        final SortedSet<Node> nodes = nodeFactory.set();
+        nodes.add(cold);
+        nodes.add(warm);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        for (int id = 1; id <= count; id++) {
+
+            final Queue.BuildableItem item = ItemMock.create(nodes, id, "job", id);
+
+            final Queue.Task task = mock(Queue.Task.class, withSettings().extraInterfaces(Item.class));
+            when(((Item) task).getFullName()).thenReturn("job");
+            Whitebox.setInternalState(item, "task", task);
+
+            queue.add(item);
+        }
+
+        return queue;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.inprocessscheduler;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class UsageLedgerTest {
+
+    private static final long HALF_LIFE = 1000;
+
+    private final UsageLedger ledger = new UsageLedger(HALF_LIFE);
+
+    @Test
+    public void accumulateUsage() {
+
+        ledger.record("team", 10, 0);
+        ledger.record("team", 5, 0);
+        ledger.record("other", 1, 0);
+
+        assertEquals(15, ledger.usage("team", 0), 0.001);
+        assertEquals(1, ledger.usage("other", 0), 0.001);
+        assertEquals(0, ledger.usage("unknown", 0), 0.001);
+    }
+
+    @Test
+    public void decayUsage() {
+
+        ledger.record("team", 16, 0);
+
+        assertEquals(8, ledger.usage("team", HALF_LIFE), 0.001);
+        assertEquals(4, ledger.usage("team", 2 * HALF_LIFE), 0.001);
+
+        ledger.record("team", 4, 2 * HALF_LIFE);
+        assertEquals(4, ledger.usage("team", 3 * HALF_LIFE), 0.001);
+    }
+
+    @Test
+    public void correctOverestimatedUsage() {
+
+        ledger.record("team", 10, 0);
+        ledger.record("team", -8, HALF_LIFE);
+
+        assertEquals(0, ledger.usage("team", HALF_LIFE), 0.001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNonPositiveHalfLife() {
+
+        new UsageLedger(0);
+    }
+}
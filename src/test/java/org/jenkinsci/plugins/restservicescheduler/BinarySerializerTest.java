@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+import org.jenkinsci.plugins.externalscheduler.ItemMock;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.NodeMockFactory;
+import org.jenkinsci.plugins.externalscheduler.StateProviderMock;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Node.class, Computer.class, Queue.BuildableItem.class})
+public class BinarySerializerTest {
+
+    private final NodeMockFactory nodeFactory = new NodeMockFactory();
+    private final BinarySerializer serializer = new BinarySerializer();
+
+    @Test
+    public void serializeSeveralItems() throws IOException {
+
+        final Node master = nodeFactory.node("master", 2, 1);
+        final Node slave1 = nodeFactory.node("slave1", 7, 7);
+        final Node slave2 = nodeFactory.node("slave2", 1, 0);
+
+        final SortedSet<Node> masterSet = nodeFactory.set();
+        masterSet.add(master);
+
+        final SortedSet<Node> slaveSet = nodeFactory.set();
+        slaveSet.add(slave1);
+        slaveSet.add(slave2);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        queue.add(ItemMock.create(masterSet, 2, "Single queue item", 3));
+        queue.add(ItemMock.create(slaveSet, 4, "raven_eap", 5));
+
+        final ByteBuffer state = serializer.serialize(
+                new StateProviderMock(queue, Arrays.asList(master, slave1, slave2)),
+                NodeAssignments.builder().assign(4, "slave2").build()
+        );
+
+        assertEquals(state.remaining() - 4, state.getInt());
+        assertEquals(BinarySerializer.MAGIC, state.getInt());
+        assertEquals(BinarySerializer.VERSION, state.getInt());
+
+        assertEquals(3, state.getInt());
+        assertNode(state, "master", 2, 1);
+        assertNode(state, "slave1", 7, 7);
+        assertNode(state, "slave2", 1, 0);
+
+        assertEquals(2, state.getInt());
+        assertItem(state, 2, 3, "Single queue item", null, 0);
+        assertItem(state, 4, 5, "raven_eap", "slave2", 1, 2);
+
+        assertFalse(state.hasRemaining());
+    }
+
+    private void assertNode(final ByteBuffer state, final String name, final int executors, final int free) {
+
+        assertEquals(name, string(state));
+        assertEquals(executors, state.getInt());
+        assertEquals(free, state.getInt());
+    }
+
+    private void assertItem(
+            final ByteBuffer state, final int id, final long inQueueSince, final String name,
+            final String assigned, final int... candidates
+    ) {
+
+        assertEquals(id, state.getInt());
+        assertEquals(50, state.getInt());
+        assertEquals(inQueueSince, state.getLong());
+        assertEquals(0, state.getLong());
+        assertEquals(name, string(state));
+        assertEquals(assigned, string(state));
+
+        final int[] actual = new int[state.getInt()];
+        for (int i = 0; i < actual.length; i++) {
+
+            actual[i] = state.getInt();
+        }
+
+        assertEquals(Arrays.toString(candidates), Arrays.toString(actual));
+    }
+
+    private String string(final ByteBuffer state) {
+
+        final int length = state.getInt();
+        if (length == -1) return null;
+
+        final byte[] bytes = new byte[length];
+        state.get(bytes);
+        return new String(bytes, Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void deserializeSolution() throws IOException {
+
+        final Map<Integer, String> assignments = new HashMap<Integer, String>();
+        assignments.put(1, "slave1");
+        assignments.put(2, null);
+        assignments.put(3, "slave\u00e9");
+        assignments.put(4, "slave1");
+
+        final NodeAssignments expected = NodeAssignments.builder()
+                .assign(1, "slave1")
+                .assign(3, "slave\u00e9")
+                .assign(4, "slave1")
+                .build()
+        ;
+
+        assertEquals(expected, serializer.deserialize(BinarySolution.encode(assignments)));
+    }
+
+    @Test
+    public void deserializeGroupedSolution() throws IOException {
+
+        final Map<Integer, String> assignments = new HashMap<Integer, String>();
+        assignments.put(1, "slave1");
+        assignments.put(2, "slave2");
+        assignments.put(3, "slave1");
+        assignments.put(4, null);
+
+        final NodeAssignments actual = serializer.deserialize(
+                BinarySolution.encode(assignments, new int[] {1, 2}, new int[] {3, 4})
+        );
+
+        assertEquals(2, actual.size());
+        assertEquals("slave2", actual.nodeName(2));
+        assertNull(actual.nodeName(3));
+        assertTrue(actual.isGroupIncomplete(3));
+    }
+
+    @Test
+    public void readConsecutiveMessages() throws IOException {
+
+        final Map<Integer, String> first = new HashMap<Integer, String>();
+        first.put(1, "master");
+        final Map<Integer, String> second = new HashMap<Integer, String>();
+        second.put(2, "slave");
+
+        final ByteBuffer a = BinarySolution.encode(first);
+        final ByteBuffer b = BinarySolution.encode(second);
+        final ByteBuffer stream = ByteBuffer.allocateDirect(a.remaining() + b.remaining());
+        stream.put(a).put(b).flip();
+
+        assertEquals("master", serializer.deserialize(stream).nodeName(1));
+        assertEquals("slave", serializer.deserialize(stream).nodeName(2));
+        assertFalse(stream.hasRemaining());
+    }
+
+    @Test
+    public void rejectMalformedSolutions() {
+
+        final Map<Integer, String> assignments = new HashMap<Integer, String>();
+        assignments.put(1, "master");
+        final ByteBuffer valid = BinarySolution.encode(assignments);
+
+        final ByteBuffer truncated = valid.duplicate();
+        truncated.limit(truncated.limit() - 1);
+        assertMalformed(truncated);
+
+        final ByteBuffer badMagic = copy(valid);
+        badMagic.putInt(4, 42);
+        assertMalformed(badMagic);
+
+        final ByteBuffer badLength = copy(valid);
+        badLength.putInt(0, 6);
+        assertMalformed(badLength);
+
+        final ByteBuffer badIndex = copy(valid);
+        badIndex.putInt(badIndex.limit() - 8, 7);
+        assertMalformed(badIndex);
+
+        final ByteBuffer negativeNameCount = copy(valid);
+        negativeNameCount.putInt(12, -1);
+        assertMalformed(negativeNameCount);
+
+        final ByteBuffer hugeNameCount = copy(valid);
+        hugeNameCount.putInt(12, Integer.MAX_VALUE);
+        assertMalformed(hugeNameCount);
+    }
+
+    private ByteBuffer copy(final ByteBuffer buffer) {
+
+        final ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate()).flip();
+        return copy;
+    }
+
+    private void assertMalformed(final ByteBuffer solution) {
+
+        try {
+
+            serializer.deserialize(solution);
+            fail("Malformed solution accepted");
+        } catch (final IOException ex) {
+
+            // expected
+        }
+    }
+}
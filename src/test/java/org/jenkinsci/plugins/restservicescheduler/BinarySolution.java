@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encode solution the way planner does
+ *
+ * @author ogondza
+ * @see BinarySerializer
+ */
+public class BinarySolution {
+
+    /**
+     * @param assignments Item id to node name. Null name for items planner decided not to run.
+     * @param groups Ids of items to assign all or none
+     * @return Buffer ready to be read
+     */
+    public static ByteBuffer encode(final Map<Integer, String> assignments, final int[]... groups) {
+
+        try {
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(BinarySerializer.MAGIC);
+            out.writeInt(BinarySerializer.VERSION);
+
+            final Map<String, Integer> names = new LinkedHashMap<String, Integer>();
+            for (final String name: assignments.values()) {
+
+                if (name != null && !names.containsKey(name)) {
+
+                    names.put(name, names.size());
+                }
+            }
+
+            out.writeInt(names.size());
+            for (final String name: names.keySet()) {
+
+                final byte[] encoded = name.getBytes("UTF-8");
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+
+            out.writeInt(assignments.size());
+            for (final Map.Entry<Integer, String> assignment: assignments.entrySet()) {
+
+                out.writeInt(assignment.getKey());
+                out.writeInt(assignment.getValue() == null ? -1 : names.get(assignment.getValue()));
+            }
+
+            out.writeInt(groups.length);
+            for (final int[] group: groups) {
+
+                out.writeInt(group.length);
+                for (final int id: group) {
+
+                    out.writeInt(id);
+                }
+            }
+
+            out.close();
+
+            final ByteBuffer message = ByteBuffer.allocate(4 + bytes.size());
+            message.putInt(bytes.size());
+            message.put(bytes.toByteArray());
+            message.flip();
+            return message;
+        } catch (final IOException ex) {
+
+            throw new AssertionError(ex);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.when;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.externalscheduler.ItemMock;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.NodeMockFactory;
+import org.jenkinsci.plugins.externalscheduler.StateProvider;
+import org.jenkinsci.plugins.externalscheduler.StateProviderMock;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Node.class, Computer.class, Queue.BuildableItem.class})
+public class JsonSerializerTest {
+
+    private final NodeMockFactory nodeFactory = new NodeMockFactory();
+    private final JsonSerializer serializer = new JsonSerializer();
+
+    @Test
+    public void serializeSingleItem() throws IOException {
+
+        final Node master = nodeFactory.node("master", 2, 1);
+
+        final SortedSet<Node> nodes = nodeFactory.set();
+        nodes.add(master);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        queue.add(ItemMock.create(nodes, 2, "Single queue item", 3));
+
+        assertSerialized(
+                "singleItem.queue.json",
+                new StateProviderMock(queue, Arrays.asList(master)),
+                null
+        );
+    }
+
+    @Test
+    public void serializeSeveralItems() throws IOException {
+
+        final Node master = nodeFactory.node("master", 2, 1);
+        final Node slave1 = nodeFactory.node("slave1", 7, 7);
+        final Node slave2 = nodeFactory.node("slave2", 1, 0);
+
+        final SortedSet<Node> masterSet = nodeFactory.set();
+        masterSet.add(master);
+
+        final SortedSet<Node> slaveSet = nodeFactory.set();
+        slaveSet.add(slave1);
+        slaveSet.add(slave2);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        queue.add(ItemMock.create(masterSet, 2, "Single queue item", 3));
+        queue.add(ItemMock.create(slaveSet, 4, "raven_eap", 5));
+
+        assertSerialized(
+                "severalItems.queue.json",
+                new StateProviderMock(queue, Arrays.asList(master, slave1, slave2)),
+                NodeAssignments.builder().assign(4, "slave2").build()
+        );
+    }
+
+    @Test
+    public void serializeUnlabeledItem() throws IOException {
+
+        final Node slave2 = nodeFactory.node("slave_2:1", 2, 1);
+        final Node slave1 = nodeFactory.node("slave_1:2", 1, 2);
+
+        final Queue.BuildableItem item = ItemMock.create(nodeFactory.set(), 2, "Unlabeled item", 3);
+        when(item.getAssignedLabel()).thenReturn(null);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        queue.add(item);
+
+        assertSerialized(
+                "unlabeledItem.queue.json",
+                new StateProviderMock(queue, Arrays.asList(slave2, slave1)),
+                null
+        );
+    }
+
+    @Test
+    public void skipOfflineNodes() throws IOException {
+
+        final Node master = nodeFactory.node("master", 2, 1);
+        final Node offline = nodeFactory.node("offline", 2, 2);
+
+        final SortedSet<Node> nodes = nodeFactory.set();
+        nodes.add(master);
+        nodes.add(offline);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        queue.add(ItemMock.create(nodes, 2, "Single queue item", 3));
+
+        assertSerialized(
+                "singleItem.queue.json",
+                new StateProviderMock(queue, Arrays.asList(master)),
+                null
+        );
+    }
+
+    @Test
+    public void omitUnknownDuration() throws IOException {
+
+        final Node master = nodeFactory.node("master", 2, 1);
+
+        final SortedSet<Node> nodes = nodeFactory.set();
+        nodes.add(master);
+
+        final Queue.BuildableItem item = ItemMock.create(nodes, 2, "Single queue item", 3);
+        when(item.task.getEstimatedDuration()).thenReturn(-1L);
+
+        final List<Queue.BuildableItem> queue = ItemMock.list();
+        queue.add(item);
+
+        final JSONObject actual = JSONObject.fromObject(
+                serializer.serialize(new StateProviderMock(queue, Arrays.asList(master)), null)
+        );
+
+        assertFalse(actual.getJSONArray("queue").getJSONObject(0).has("estimatedDuration"));
+    }
+
+    @Test
+    public void deserializeSolution() throws IOException {
+
+        final NodeAssignments expected = NodeAssignments.builder()
+                .assign(1, "slave1")
+                .build()
+        ;
+
+        assertEquals(expected, serializer.deserialize(resource("solution.json")));
+    }
+
+    @Test
+    public void deserializeGroupedSolution() throws IOException {
+
+        final NodeAssignments expected = NodeAssignments.builder()
+                .assign(1, "slave1")
+                .assign(2, "slave2")
+                .assign(3, "slave1")
+                .group(1, 2)
+                .group(3, 4)
+                .build()
+        ;
+
+        final NodeAssignments actual = serializer.deserialize(resource("groupedSolution.json"));
+        assertEquals(expected, actual);
+        assertEquals(2, actual.size());
+        assertTrue(actual.isGroupIncomplete(3));
+    }
+
+    private void assertSerialized(
+            final String expected, final StateProvider state, final NodeAssignments previous
+    ) throws IOException {
+
+        final String actual = serializer.serialize(state, previous);
+
+        assertEquals(
+                JSONObject.fromObject(resource(expected)),
+                JSONObject.fromObject(actual)
+        );
+    }
+
+    /*package*/ static String resource(final String name) throws IOException {
+
+        return IOUtils.toString(
+                JsonSerializerTest.class.getResourceAsStream("json/" + name), "UTF-8"
+        );
+    }
+}
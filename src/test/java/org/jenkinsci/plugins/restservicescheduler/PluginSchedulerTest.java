@@ -0,0 +1,288 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import hudson.model.Node;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.externalscheduler.ItemMock;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.StateProviderMock;
+import org.jenkinsci.plugins.externalscheduler.StateTracker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Talk to in-process HTTP server standing in for the planner
+ */
+public class PluginSchedulerTest {
+
+    private HttpServer server;
+    private URL serverUrl;
+
+    private final List<String> postedQueues = new ArrayList<String>();
+    private final List<String> postedDeltas = new ArrayList<String>();
+    private final List<ByteBuffer> postedBinaryQueues = new ArrayList<ByteBuffer>();
+    private final Set<Integer> clientPorts = new HashSet<Integer>();
+    private volatile String solution;
+    private volatile long delay = 0;
+
+    @Before
+    public void setUp() throws IOException {
+
+        solution = JsonSerializerTest.resource("solution.json");
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/planner/queue", new HttpHandler() {
+
+            public void handle(final HttpExchange exchange) throws IOException {
+
+                if (isBinary(exchange, "Content-Type")) {
+
+                    postedBinaryQueues.add(ByteBuffer.wrap(IOUtils.toByteArray(exchange.getRequestBody())));
+                } else {
+
+                    postedQueues.add(IOUtils.toString(exchange.getRequestBody(), "UTF-8"));
+                }
+
+                respond(exchange, null);
+            }
+        });
+        server.createContext("/planner/delta", new HttpHandler() {
+
+            public void handle(final HttpExchange exchange) throws IOException {
+
+                postedDeltas.add(IOUtils.toString(exchange.getRequestBody(), "UTF-8"));
+                respond(exchange, null);
+            }
+        });
+        server.createContext("/planner/solution", new HttpHandler() {
+
+            public void handle(final HttpExchange exchange) throws IOException {
+
+                if (isBinary(exchange, "Accept")) {
+
+                    final Map<Integer, String> assignments = new HashMap<Integer, String>();
+                    assignments.put(1, "slave1");
+                    assignments.put(2, null);
+                    final ByteBuffer content = BinarySolution.encode(assignments);
+                    respond(exchange, Arrays.copyOf(content.array(), content.limit()));
+                } else {
+
+                    respond(exchange, solution.getBytes("UTF-8"));
+                }
+            }
+        });
+        server.start();
+
+        serverUrl = new URL("http://localhost:" + server.getAddress().getPort() + "/planner");
+    }
+
+    @After
+    public void tearDown() {
+
+        server.stop(0);
+    }
+
+    private boolean isBinary(final HttpExchange exchange, final String header) {
+
+        return BinarySerializer.CONTENT_TYPE.equals(exchange.getRequestHeaders().getFirst(header));
+    }
+
+    private void respond(final HttpExchange exchange, final byte[] content) throws IOException {
+
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+
+        try {
+
+            Thread.sleep(delay);
+        } catch (final InterruptedException ex) {
+
+            Thread.currentThread().interrupt();
+        }
+
+        if (content == null) {
+
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.sendResponseHeaders(200, content.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(content);
+        out.close();
+    }
+
+    @Test
+    public void getSolution() {
+
+        final NodeAssignments expected = NodeAssignments.builder().assign(1, "slave1").build();
+
+        assertEquals(expected, scheduler().solution());
+
+        assertEquals(1, postedQueues.size());
+        assertEquals(
+                JSONObject.fromObject("{\"queue\":[]}"),
+                JSONObject.fromObject(postedQueues.get(0))
+        );
+    }
+
+    @Test
+    public void serializeGivenSnapshot() {
+
+        // Provider is not supposed to be asked for state
+        final PluginScheduler scheduler = new PluginScheduler(serverUrl, new StateProviderMock(null, null));
+
+        final NodeAssignments expected = NodeAssignments.builder().assign(1, "slave1").build();
+
+        assertEquals(expected, scheduler.solution(ItemMock.list(), new ArrayList<Node>()));
+        assertEquals(
+                JSONObject.fromObject("{\"queue\":[]}"),
+                JSONObject.fromObject(postedQueues.get(0))
+        );
+    }
+
+    @Test
+    public void getBinarySolution() {
+
+        final PluginScheduler scheduler = new PluginScheduler(
+                serverUrl, new StateProviderMock(ItemMock.list(), new ArrayList<Node>()), true
+        );
+
+        final NodeAssignments expected = NodeAssignments.builder().assign(1, "slave1").build();
+
+        assertEquals(expected, scheduler.solution());
+
+        assertEquals(0, postedQueues.size());
+        assertEquals(1, postedBinaryQueues.size());
+
+        final ByteBuffer queue = postedBinaryQueues.get(0);
+        assertEquals(queue.remaining() - 4, queue.getInt());
+        assertEquals(BinarySerializer.MAGIC, queue.getInt());
+        assertEquals(BinarySerializer.VERSION, queue.getInt());
+        assertEquals(0, queue.getInt());
+        assertEquals(0, queue.getInt());
+    }
+
+    @Test
+    public void sendChangesOnly() {
+
+        final StateTracker tracker = new StateTracker();
+        final PluginScheduler scheduler = new PluginScheduler(
+                serverUrl, new StateProviderMock(ItemMock.list(), new ArrayList<Node>()), tracker
+        );
+
+        scheduler.solution();
+        scheduler.solution();
+
+        assertEquals(1, postedQueues.size());
+        assertEquals(
+                JSONObject.fromObject("{\"queue\":[],\"version\":0}"),
+                JSONObject.fromObject(postedQueues.get(0))
+        );
+
+        assertEquals(1, postedDeltas.size());
+        assertEquals(
+                JSONObject.fromObject("{\"since\":0,\"version\":0,\"removed\":[],\"added\":[],\"nodes\":[]}"),
+                JSONObject.fromObject(postedDeltas.get(0))
+        );
+    }
+
+    @Test
+    public void reuseConnection() {
+
+        final PluginScheduler scheduler = scheduler();
+        for (int i = 0; i < 5; i++) {
+
+            scheduler.solution();
+        }
+
+        assertEquals(5, postedQueues.size());
+        assertEquals(clientPorts.toString(), 1, clientPorts.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failWhenServerDown() {
+
+        final PluginScheduler scheduler = scheduler();
+        server.stop(0);
+
+        scheduler.solution();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failWhenInvalidResponse() {
+
+        solution = "Not a JSON";
+
+        scheduler().solution();
+    }
+
+    @Test
+    public void timeout() throws IOException {
+
+        delay = 500;
+
+        final RestClient client = new RestClient(serverUrl, 1000, 100);
+        try {
+
+            client.get("solution");
+            fail("Read should time out");
+        } catch (final SocketTimeoutException ex) {
+
+            // expected
+        }
+    }
+
+    private PluginScheduler scheduler() {
+
+        return new PluginScheduler(
+                serverUrl, new StateProviderMock(ItemMock.list(), new ArrayList<Node>())
+        );
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.model.Node;
+import hudson.model.Queue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sf.json.JSONException;
+
+import org.jenkinsci.plugins.externalscheduler.ItemMock;
+import org.jenkinsci.plugins.externalscheduler.NodeAssignments;
+import org.jenkinsci.plugins.externalscheduler.StateTracker;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(Queue.BuildableItem.class)
+public class PushSchedulerTest {
+
+    private final PushScheduler scheduler = new PushScheduler();
+
+    @Test
+    public void noSolutionUntilPushed() {
+
+        assertNull(scheduler.solution());
+    }
+
+    @Test
+    public void replaceSolution() throws IOException {
+
+        final NodeAssignments pushed = scheduler.update(JsonSerializerTest.resource("solution.json"));
+
+        assertEquals(NodeAssignments.builder().assign(1, "slave1").build(), pushed);
+        assertSame(pushed, scheduler.solution());
+    }
+
+    @Test
+    public void patchLatestSolution() throws IOException {
+
+        scheduler.update(JsonSerializerTest.resource("solution.json"));
+        scheduler.update("{\"patch\":[{\"id\":2,\"node\":\"slave2\"},{\"id\":1,\"node\":\"not-assigned\"}]}");
+
+        assertEquals(NodeAssignments.builder().assign(2, "slave2").build(), scheduler.solution());
+
+        scheduler.update("{\"patch\":[{\"id\":2,\"node\":\"slave1\"}]}");
+
+        assertEquals(NodeAssignments.builder().assign(2, "slave1").build(), scheduler.solution());
+    }
+
+    @Test
+    public void rejectPatchBeforeFirstSolution() {
+
+        try {
+
+            scheduler.update("{\"patch\":[{\"id\":3,\"node\":\"master\"}]}");
+            fail("Patch should be rejected");
+        } catch (final IllegalStateException ex) {
+
+            // expected
+        }
+
+        assertNull(scheduler.solution());
+    }
+
+    @Test
+    public void patchGroupMember() throws IOException {
+
+        scheduler.update(
+                "{\"solution\":[{\"id\":1,\"node\":\"slave1\",\"group\":\"g\"},{\"id\":2,\"node\":\"slave2\",\"group\":\"g\"}]}"
+        );
+        final NodeAssignments patched = scheduler.update("{\"patch\":[{\"id\":2,\"node\":\"not-assigned\"}]}");
+
+        assertEquals(0, patched.size());
+        assertTrue(patched.isGroupIncomplete(1));
+    }
+
+    @Test
+    public void evictItemsThatLeftQueue() throws IOException {
+
+        scheduler.update(JsonSerializerTest.resource("solution.json"));
+        scheduler.update("{\"patch\":[{\"id\":2,\"node\":\"slave2\"}]}");
+        scheduler.itemsLeft(1);
+
+        assertEquals(NodeAssignments.builder().assign(2, "slave2").build(), scheduler.solution());
+    }
+
+    @Test
+    public void reconcileWithQueueSnapshot() throws IOException {
+
+        final PushScheduler scheduler = new PushScheduler(new StateTracker());
+        final List<Queue.BuildableItem> queue = new ArrayList<Queue.BuildableItem>();
+        final List<Node> nodes = new ArrayList<Node>();
+
+        assertNull(scheduler.solution(queue, nodes));
+
+        scheduler.update(JsonSerializerTest.resource("solution.json"));
+        final NodeAssignments reconciled = scheduler.solution(queue, nodes);
+
+        assertEquals(0, reconciled.size());
+        assertSame(reconciled, scheduler.solution(queue, nodes));
+
+        final NodeAssignments patched = scheduler.update("{\"patch\":[{\"id\":2,\"node\":\"slave2\"}]}");
+        assertEquals(1, patched.size());
+        assertEquals(0, scheduler.solution(queue, nodes).size());
+    }
+
+    @Test
+    public void keepAssignmentOfBlockedItem() throws IOException {
+
+        final Set<Integer> queued = new HashSet<Integer>(Arrays.asList(1));
+        final PushScheduler scheduler = new PushScheduler(new StateTracker()) {
+
+            @Override
+            /*package*/ int[] queued() {
+
+                final int[] ids = new int[queued.size()];
+                int i = 0;
+                for (final int id: queued) {
+
+                    ids[i++] = id;
+                }
+
+                return ids;
+            }
+
+            @Override
+            /*package*/ boolean isQueued(final int id) {
+
+                return queued.contains(id);
+            }
+        };
+
+        final List<Queue.BuildableItem> buildable = ItemMock.list();
+        buildable.add(ItemMock.create(Collections.<Node>emptySet(), 1, "job", 0));
+        final List<Queue.BuildableItem> blocked = ItemMock.list();
+        final List<Node> nodes = new ArrayList<Node>();
+
+        scheduler.update(JsonSerializerTest.resource("solution.json"));
+        assertEquals("slave1", scheduler.solution(buildable, nodes).nodeName(1));
+
+        assertEquals("slave1", scheduler.solution(blocked, nodes).nodeName(1));
+        assertEquals("slave1", scheduler.solution(blocked, nodes).nodeName(1));
+        assertEquals("slave1", scheduler.solution(buildable, nodes).nodeName(1));
+
+        // Cancelled while blocked
+        assertEquals("slave1", scheduler.solution(blocked, nodes).nodeName(1));
+        queued.remove(1);
+        assertEquals(0, scheduler.solution(blocked, nodes).size());
+    }
+
+    @Test(expected = JSONException.class)
+    public void rejectInvalidUpdate() {
+
+        scheduler.update("{\"assignments\":[]}");
+    }
+}
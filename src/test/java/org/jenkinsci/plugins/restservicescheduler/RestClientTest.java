@@ -0,0 +1,74 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 Red Hat, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.jenkinsci.plugins.restservicescheduler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class RestClientTest {
+
+    private final byte[] content = new byte[20000];
+
+    public RestClientTest() {
+
+        for (int i = 0; i < content.length; i++) {
+
+            content[i] = (byte) i;
+        }
+    }
+
+    @Test
+    public void readAnnouncedLength() throws IOException {
+
+        assertEquals(ByteBuffer.wrap(content), read(content.length));
+    }
+
+    @Test
+    public void readUnknownLength() throws IOException {
+
+        assertEquals(ByteBuffer.wrap(content), read(-1));
+    }
+
+    @Test
+    public void readPastUnderstatedLength() throws IOException {
+
+        assertEquals(ByteBuffer.wrap(content), read(10));
+    }
+
+    @Test
+    public void readEmptyResponse() throws IOException {
+
+        assertEquals(0, RestClient.read(new ByteArrayInputStream(new byte[0]), 0).remaining());
+    }
+
+    private ByteBuffer read(final int length) throws IOException {
+
+        return RestClient.read(new ByteArrayInputStream(content), length);
+    }
+}